@@ -0,0 +1,120 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import org.joml.Vector3i;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terasology.entityNetwork.BlockLocationNetworkNode;
+import org.terasology.entityNetwork.Network;
+import org.terasology.entityNetwork.NetworkNode;
+import org.terasology.entityNetwork.SidedBlockLocationNetworkNode;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the operations of a {@link BlockNetwork} that get slower as networks grow, on networks shaped like the ones
+ * players build: long lines of pipes or axles, and dense blocks of machines.  Run these before and after changing how the
+ * networks are worked out, the functional tests do not show whether a change made things slower.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BlockNetworkBenchmark {
+    private static final String NETWORK_ID = "benchmark";
+    private static final byte ALL_SIDES = 63;
+    // enough different queries that most of them miss the path cache
+    private static final int QUERY_COUNT = 4096;
+    // few enough different queries that all of them stay in the path cache
+    private static final int REPEATED_QUERY_COUNT = 16;
+
+    public enum Shape {
+        LINE,
+        GRID
+    }
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int nodeCount;
+
+    @Param({"LINE", "GRID"})
+    public Shape shape;
+
+    @Param({"false", "true"})
+    public boolean sided;
+
+    private BlockNetwork blockNetwork;
+    private NetworkNode[] nodes;
+    private int[] queryStarts;
+    private int[] queryEnds;
+    private int nextChange;
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        nodes = new NetworkNode[nodeCount];
+        int gridSize = (int) Math.ceil(Math.cbrt(nodeCount));
+        for (int i = 0; i < nodeCount; i++) {
+            Vector3i location = shape == Shape.LINE
+                    ? new Vector3i(i, 0, 0)
+                    : new Vector3i(i % gridSize, (i / gridSize) % gridSize, i / (gridSize * gridSize));
+            nodes[i] = sided
+                    ? new SidedBlockLocationNetworkNode(NETWORK_ID, false, location, ALL_SIDES)
+                    : new BlockLocationNetworkNode(NETWORK_ID, false, location);
+        }
+        blockNetwork = new BlockNetwork(NETWORK_ID);
+        blockNetwork.addNetworkingBlocks(List.of(nodes));
+
+        Random random = new Random(1);
+        queryStarts = new int[QUERY_COUNT];
+        queryEnds = new int[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queryStarts[i] = random.nextInt(nodeCount);
+            queryEnds[i] = random.nextInt(nodeCount);
+        }
+    }
+
+    /**
+     * Takes out a node and puts it back, which splits a line in two and merges it again.  A different node is picked every
+     * time, so the network keeps its size.
+     */
+    @Benchmark
+    public Collection<Network> removeAndAddNode() {
+        NetworkNode node = nodes[queryStarts[nextChange++ % QUERY_COUNT]];
+        blockNetwork.removeNetworkingBlock(node);
+        blockNetwork.addNetworkingBlock(node);
+        return blockNetwork.getNetworks();
+    }
+
+    @Benchmark
+    public List<NetworkNode> getPath() {
+        int query = nextQuery++ % QUERY_COUNT;
+        return blockNetwork.getPath(nodes[queryStarts[query]], nodes[queryEnds[query]]);
+    }
+
+    @Benchmark
+    public List<NetworkNode> getPathRepeated() {
+        int query = nextQuery++ % REPEATED_QUERY_COUNT;
+        return blockNetwork.getPath(nodes[queryStarts[query]], nodes[queryEnds[query]]);
+    }
+
+    @Benchmark
+    public Collection<Network> getNetworksOfNode() {
+        return blockNetwork.getNetworks(nodes[queryStarts[nextQuery++ % QUERY_COUNT]]);
+    }
+}
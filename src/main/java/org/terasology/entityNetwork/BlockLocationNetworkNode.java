@@ -15,21 +15,57 @@
  */
 package org.terasology.entityNetwork;
 
+import com.google.common.base.Preconditions;
 import org.joml.Vector3i;
 import org.joml.Vector3ic;
 
 public class BlockLocationNetworkNode extends NetworkNode {
-    public final Vector3i location = new Vector3i();
-    int maximumGridDistance = 1;
+    // the location packed with BlockPositionKey, the node keeps no vector of its own
+    private final long packedLocation;
+    /**
+     * Nodes further away than this can never connect to this node, the entity network only looks for connections within it.
+     */
+    final int maximumGridDistance;
 
     public BlockLocationNetworkNode(String networkId, boolean isLeaf, Vector3ic location) {
-        super(networkId, isLeaf);
-        this.location.set(location);
+        this(networkId, isLeaf, 1, location);
     }
 
     public BlockLocationNetworkNode(String networkId, boolean isLeaf, int maximumGridDistance, Vector3ic location) {
-        this(networkId, isLeaf, location);
+        super(networkId, isLeaf);
+        this.packedLocation = BlockPositionKey.pack(location);
         this.maximumGridDistance = maximumGridDistance;
+        Preconditions.checkArgument(isAt(location), "Location %s is out of the range of a network node", location);
+    }
+
+    /**
+     * @return a new vector with the location of this node
+     */
+    public Vector3i location() {
+        return new Vector3i(x(), y(), z());
+    }
+
+    public int x() {
+        return BlockPositionKey.unpackX(packedLocation);
+    }
+
+    public int y() {
+        return BlockPositionKey.unpackY(packedLocation);
+    }
+
+    public int z() {
+        return BlockPositionKey.unpackZ(packedLocation);
+    }
+
+    public int getMaximumGridDistance() {
+        return maximumGridDistance;
+    }
+
+    /**
+     * @return the location of this node packed with {@link BlockPositionKey}
+     */
+    public long getPackedLocation() {
+        return packedLocation;
     }
 
     @Override
@@ -37,26 +73,37 @@ public class BlockLocationNetworkNode extends NetworkNode {
         if (this == o) {
             return true;
         }
-        if (!(o instanceof BlockLocationNetworkNode)) {
-            return false;
-        }
         if (!super.equals(o)) {
             return false;
         }
         BlockLocationNetworkNode that = (BlockLocationNetworkNode) o;
-        return location.equals(that.location);
+        return packedLocation == that.packedLocation && maximumGridDistance == that.maximumGridDistance;
+    }
+
+    /**
+     * @return whether this node is at the given location, without looking at anything else
+     */
+    public boolean isAt(Vector3ic position) {
+        return x() == position.x() && y() == position.y() && z() == position.z();
+    }
+
+    /**
+     * @return the grid (manhattan) distance between the locations of the nodes
+     */
+    public int gridDistance(BlockLocationNetworkNode node) {
+        return Math.abs(x() - node.x()) + Math.abs(y() - node.y()) + Math.abs(z() - node.z());
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + location.hashCode();
+        result = 31 * result + Long.hashCode(packedLocation * 0x9E3779B97F4A7C15L);
         return result;
     }
 
     @Override
     public String toString() {
-        return location.toString();
+        return location().toString();
     }
 
     @Override
@@ -64,7 +111,6 @@ public class BlockLocationNetworkNode extends NetworkNode {
         if (!(networkNode instanceof BlockLocationNetworkNode)) {
             return false;
         }
-        BlockLocationNetworkNode locationNetworkNode = (BlockLocationNetworkNode) networkNode;
-        return locationNetworkNode.location.gridDistance(location) <= maximumGridDistance;
+        return ((BlockLocationNetworkNode) networkNode).gridDistance(this) <= maximumGridDistance;
     }
 }
@@ -0,0 +1,45 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork;
+
+import org.joml.Vector3ic;
+
+/**
+ * Packs block positions into a single long, which is how {@link BlockLocationNetworkNode} stores its location and how nodes
+ * are looked up by position.
+ * <p>
+ * Each axis gets 21 bits, so coordinates have to be in the range [-1048576, 1048575].  Within that range a key
+ * stands for exactly one position and unpacks to it again, so keys can be compared instead of positions.  Coordinates
+ * outside of it wrap around, which is why network nodes refuse such locations.
+ */
+public final class BlockPositionKey {
+    private static final int BITS = 21;
+    private static final long MASK = (1L << BITS) - 1;
+
+    private BlockPositionKey() {
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((x & MASK) << (BITS * 2)) | ((y & MASK) << BITS) | (z & MASK);
+    }
+
+    public static long pack(Vector3ic position) {
+        return pack(position.x(), position.y(), position.z());
+    }
+
+    public static int unpackX(long key) {
+        return signExtend(key >>> (BITS * 2));
+    }
+
+    public static int unpackY(long key) {
+        return signExtend(key >>> BITS);
+    }
+
+    public static int unpackZ(long key) {
+        return signExtend(key);
+    }
+
+    private static int signExtend(long value) {
+        return (int) ((value & MASK) << (64 - BITS) >> (64 - BITS));
+    }
+}
@@ -15,15 +15,42 @@
  */
 package org.terasology.entityNetwork;
 
-import java.util.Objects;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * A node in an entity network.  Nodes are immutable, so that they can be used as keys and shared between everything that
+ * refers to the same node.
+ */
 public class NetworkNode {
-    public String networkId;
-    public boolean isLeaf;
+    private static final Map<String, Integer> NETWORK_ID_INDICES = new ConcurrentHashMap<>();
+    private static final List<String> NETWORK_IDS = new CopyOnWriteArrayList<>();
+
+    public final boolean isLeaf;
+    // the network id interned to a small number, so that nodes neither keep nor compare strings
+    private final int networkIndex;
 
     public NetworkNode(String networkId, boolean isLeaf) {
-        this.networkId = networkId;
         this.isLeaf = isLeaf;
+        this.networkIndex = internNetworkId(networkId);
+    }
+
+    private static int internNetworkId(String networkId) {
+        if (networkId == null) {
+            return -1;
+        }
+        Integer index = NETWORK_ID_INDICES.get(networkId);
+        if (index != null) {
+            return index;
+        }
+        synchronized (NETWORK_IDS) {
+            return NETWORK_ID_INDICES.computeIfAbsent(networkId, k -> {
+                NETWORK_IDS.add(k);
+                return NETWORK_IDS.size() - 1;
+            });
+        }
     }
 
     @Override
@@ -31,31 +58,26 @@ public class NetworkNode {
         if (this == o) {
             return true;
         }
-        if (!(o instanceof NetworkNode)) {
+        if (o == null || getClass() != o.getClass()) {
             return false;
         }
 
         NetworkNode that = (NetworkNode) o;
 
-        if (isLeaf != that.isLeaf) {
-            return false;
-        }
-        return Objects.equals(networkId, that.networkId);
+        return isLeaf == that.isLeaf && networkIndex == that.networkIndex;
     }
 
     @Override
     public int hashCode() {
-        int result = networkId != null ? networkId.hashCode() : 0;
-        result = 31 * result + (isLeaf ? 1 : 0);
-        return result;
+        return 31 * networkIndex + (isLeaf ? 1 : 0);
     }
 
     public boolean isConnectedTo(NetworkNode networkNode) {
-        return networkId.equals(networkNode.networkId);
+        return networkIndex == networkNode.networkIndex;
     }
 
     public String getNetworkId() {
-        return networkId;
+        return networkIndex < 0 ? null : NETWORK_IDS.get(networkIndex);
     }
 
     public boolean isLeaf() {
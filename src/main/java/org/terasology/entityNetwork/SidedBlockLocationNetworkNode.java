@@ -9,6 +9,28 @@ import org.terasology.engine.math.SideBitFlag;
 import java.util.function.BiPredicate;
 
 public class SidedBlockLocationNetworkNode extends BlockLocationNetworkNode {
+    // the side facing each offset to a neighbouring block, indexed by offsetIndex, worked out once so that finding
+    // connections does not allocate
+    private static final Side[] OFFSET_SIDES = new Side[27];
+    // the bit of that side in connectionSides, and the bit of the opposite side
+    private static final int[] OFFSET_SIDE_SHIFTS = new int[27];
+    private static final int[] OFFSET_REVERSE_SIDE_SHIFTS = new int[27];
+
+    static {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    int index = offsetIndex(dx, dy, dz);
+                    Side side = Side.inDirection(new Vector3f(new Vector3i(dx, dy, dz)));
+                    byte sideBit = SideBitFlag.getSide(side);
+                    OFFSET_SIDES[index] = side;
+                    OFFSET_SIDE_SHIFTS[index] = Integer.numberOfTrailingZeros(sideBit);
+                    OFFSET_REVERSE_SIDE_SHIFTS[index] = Integer.numberOfTrailingZeros(SideBitFlag.getReverse(sideBit));
+                }
+            }
+        }
+    }
+
     public final byte connectionSides;
 
     public SidedBlockLocationNetworkNode(String networkId, boolean isLeaf, Vector3ic location, byte connectionSides) {
@@ -25,9 +47,6 @@ public class SidedBlockLocationNetworkNode extends BlockLocationNetworkNode {
         if (this == o) {
             return true;
         }
-        if (!(o instanceof SidedBlockLocationNetworkNode)) {
-            return false;
-        }
         if (!super.equals(o)) {
             return false;
         }
@@ -57,40 +76,55 @@ public class SidedBlockLocationNetworkNode extends BlockLocationNetworkNode {
                 connectionSidesToTest = ((SidedBlockLocationNetworkNode) networkNode).connectionSides;
             }
             BlockLocationNetworkNode locationNetworkNode = (BlockLocationNetworkNode) networkNode;
-            return areConnected(location, connectionSides, locationNetworkNode.location, connectionSidesToTest);
+            return areConnected(this, connectionSides, locationNetworkNode, connectionSidesToTest);
         }
         return false;
     }
 
-    private static boolean areConnected(Vector3ic lhsLocation, byte lhsSide, Vector3ic rhsLocation, byte rhsSide) {
-        Vector3i sideVector = new Vector3i(rhsLocation);
-        sideVector.sub(lhsLocation);
-        Side side = Side.inDirection(new Vector3f(sideVector));
-        byte sideBit = SideBitFlag.getSide(side);
+    private static boolean areConnected(BlockLocationNetworkNode lhs, byte lhsSide, BlockLocationNetworkNode rhs, byte rhsSide) {
+        int index = offsetIndex(rhs.x() - lhs.x(), rhs.y() - lhs.y(), rhs.z() - lhs.z());
+        if (index < 0) {
+            byte sideBit = SideBitFlag.getSide(sideInDirection(lhs, rhs));
+            return (sideBit & lhsSide) == sideBit && (SideBitFlag.getReverse(sideBit) & rhsSide) == SideBitFlag.getReverse(sideBit);
+        }
+        // both nodes have to connect on the sides facing each other
+        return ((lhsSide >>> OFFSET_SIDE_SHIFTS[index]) & (rhsSide >>> OFFSET_REVERSE_SIDE_SHIFTS[index]) & 1) != 0;
+    }
 
-        return (sideBit & lhsSide) == sideBit && (SideBitFlag.getReverse(sideBit) & rhsSide) == SideBitFlag.getReverse(sideBit);
+    public Side connectionSide(SidedBlockLocationNetworkNode node) {
+        return sideInDirection(this, node);
+    }
 
+    private static Side sideInDirection(BlockLocationNetworkNode from, BlockLocationNetworkNode to) {
+        int index = offsetIndex(to.x() - from.x(), to.y() - from.y(), to.z() - from.z());
+        if (index < 0) {
+            return Side.inDirection(new Vector3f(to.location().sub(from.location())));
+        }
+        return OFFSET_SIDES[index];
     }
 
-    public Side connectionSide(SidedBlockLocationNetworkNode node) {
-        Vector3i sideVector = new Vector3i(node.location);
-        sideVector.sub(location);
-        Side side = Side.inDirection(new Vector3f(sideVector));
-        return side;
+    /**
+     * @return the index of the offset in the side tables, or -1 if the offset does not point at a neighbouring block
+     */
+    private static int offsetIndex(int dx, int dy, int dz) {
+        if (dx < -1 || dx > 1 || dy < -1 || dy > 1 || dz < -1 || dz > 1) {
+            return -1;
+        }
+        return (dx + 1) * 9 + (dy + 1) * 3 + dz + 1;
     }
 
     public static BiPredicate<NetworkNode, NetworkNode> createSideConnectivityFilter(Side targetSide,
-                                                                                     Vector3i targetLocation) {
+                                                                                     Vector3ic targetLocation) {
         return new SideConnectivityFilter(targetSide, targetLocation);
     }
 
     private static class SideConnectivityFilter implements BiPredicate<NetworkNode, NetworkNode> {
         final Side targetSide;
-        final Vector3i targetLocation;
+        final Vector3ic targetLocation;
 
-        public SideConnectivityFilter(Side targetSide, Vector3i targetLocation) {
+        public SideConnectivityFilter(Side targetSide, Vector3ic targetLocation) {
             this.targetSide = targetSide;
-            this.targetLocation = targetLocation;
+            this.targetLocation = new Vector3i(targetLocation);
         }
 
         @Override
@@ -102,10 +136,10 @@ public class SidedBlockLocationNetworkNode extends BlockLocationNetworkNode {
             SidedBlockLocationNetworkNode source = (SidedBlockLocationNetworkNode) lhs;
             SidedBlockLocationNetworkNode target = (SidedBlockLocationNetworkNode) rhs;
 
-            if (target.location.equals(targetLocation)) {
+            if (target.isAt(targetLocation)) {
                 byte targetSideBitFlag = SideBitFlag.getSide(targetSide);
                 if ((targetSideBitFlag & target.connectionSides) == targetSideBitFlag) {
-                    return areConnected(source.location, source.connectionSides, target.location, targetSideBitFlag);
+                    return areConnected(source, source.connectionSides, target, targetSideBitFlag);
                 } else {
                     return false;
                 }
@@ -113,5 +147,23 @@ public class SidedBlockLocationNetworkNode extends BlockLocationNetworkNode {
                 return true;
             }
         }
+
+        // filters for the same side are equal, so that the paths found with them can be cached
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SideConnectivityFilter that = (SideConnectivityFilter) o;
+            return targetSide == that.targetSide && targetLocation.equals(that.targetLocation);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * targetSide.hashCode() + targetLocation.hashCode();
+        }
     }
 }
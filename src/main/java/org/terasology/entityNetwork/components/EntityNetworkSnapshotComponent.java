@@ -0,0 +1,21 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.components;
+
+import com.google.common.collect.Maps;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+import java.util.Map;
+
+/**
+ * Kept on the world entity, holds the topology of each network id as it was when the world was last saved.
+ */
+public class EntityNetworkSnapshotComponent implements Component<EntityNetworkSnapshotComponent> {
+    public Map<String, byte[]> snapshots = Maps.newHashMap();
+
+    @Override
+    public void copyFrom(EntityNetworkSnapshotComponent other) {
+        this.snapshots.clear();
+        this.snapshots.putAll(other.snapshots);
+    }
+}
@@ -1,32 +1,102 @@
 package org.terasology.entityNetwork.systems;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
+import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.entityNetwork.BlockLocationNetworkNode;
 import org.terasology.entityNetwork.Network;
 import org.terasology.entityNetwork.NetworkNode;
+import org.terasology.entityNetwork.systems.BlockNetworkStatistics.Operation;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
 
 class BlockNetwork {
     private static final Logger logger = LoggerFactory.getLogger(BlockNetwork.class);
+    private static final int PATH_CACHE_SIZE = 256;
+    private static final int DISTANCE_FIELD_CACHE_SIZE = 8;
+    private static final int NETWORK_CHAINS_CACHE_SIZE = 4;
 
     private Map<Network, Set<NetworkNode>> allNetworks = Maps.newHashMap();
+    // the reverse of allNetworks, the networks each node is part of
+    private SetMultimap<NetworkNode, Network> nodeNetworks = HashMultimap.create();
     // an adjacency list of nodes connecting to each other
     private Map<NetworkNode, Set<NetworkNode>> adjacencyList = Maps.newHashMap();
+    // block located nodes by position, so that connections can be found by looking at the neighborhood only
+    private SpatialNodeIndex spatialIndex = new SpatialNodeIndex();
+    private NetworkPathFinder pathFinder = new NetworkPathFinder(adjacencyList);
 
     private Set<NetworkTopologyListener> listeners = Sets.newLinkedHashSet();
+    // the changes of the update in progress, the listeners hear about them once the update is done
+    private NetworkTopologyDelta delta = new NetworkTopologyDelta();
+    private Set<NetworkTopologyListener> deferredListeners = Sets.newLinkedHashSet();
+    // the changes of all the updates since the deferred listeners last heard about them
+    private NetworkTopologyDelta deferredDelta = new NetworkTopologyDelta();
+
+    // bumped every time nodes are added or removed, anything worked out from the topology is only valid for one version
+    private long topologyVersion;
+    // recently found paths, only valid for pathCacheVersion
+    private Map<PathQuery, List<NetworkNode>> pathCache = new LinkedHashMap<PathQuery, List<NetworkNode>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PathQuery, List<NetworkNode>> eldest) {
+            return size() > PATH_CACHE_SIZE;
+        }
+    };
+    private long pathCacheVersion;
+    // distance fields by the sources they were worked out for, dropped whenever the nodes of their network or what they
+    // stand for change
+    private Map<Network, Map<Predicate<NetworkNode>, NetworkDistanceField>> distanceFields = Maps.newHashMap();
+    // the chains of all networks by the capacities they were worked out with, kept up to date as the topology changes
+    // until they are dropped for capacities that were asked for more recently
+    private Map<ToDoubleFunction<NetworkNode>, NetworkChains> networkChains =
+            new LinkedHashMap<ToDoubleFunction<NetworkNode>, NetworkChains>(4, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ToDoubleFunction<NetworkNode>, NetworkChains> eldest) {
+                    if (size() > NETWORK_CHAINS_CACHE_SIZE) {
+                        removeTopologyListener(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    // changes waiting to be applied all at once
+    private Set<NetworkNode> queuedRemovals = Sets.newLinkedHashSet();
+    private Set<NetworkNode> queuedAdditions = Sets.newLinkedHashSet();
+
+    private final BlockNetworkStatistics statistics;
+
+    BlockNetwork() {
+        this("");
+    }
+
+    /**
+     * @param networkId the id of the nodes in this block network, it only shows up in the statistics
+     */
+    BlockNetwork(String networkId) {
+        statistics = new BlockNetworkStatistics(networkId);
+    }
 
     public void addTopologyListener(NetworkTopologyListener listener) {
         listeners.add(listener);
@@ -36,194 +106,713 @@ class BlockNetwork {
         listeners.remove(listener);
     }
 
+    /**
+     * Adds a listener that hears about the changes of several updates at once, whenever
+     * {@link #dispatchDeferredChanges()} is called, instead of after every update.
+     */
+    public void addDeferredTopologyListener(NetworkTopologyListener listener) {
+        deferredListeners.add(listener);
+    }
+
+    public void removeDeferredTopologyListener(NetworkTopologyListener listener) {
+        deferredListeners.remove(listener);
+        if (deferredListeners.isEmpty()) {
+            deferredDelta = new NetworkTopologyDelta();
+        }
+    }
+
+    /**
+     * Tells the deferred listeners about everything that changed since the last call, in one delta.
+     */
+    public void dispatchDeferredChanges() {
+        NetworkTopologyDelta changes = deferredDelta;
+        if (changes.isEmpty()) {
+            return;
+        }
+        deferredDelta = new NetworkTopologyDelta();
+        long startTime = statistics.start(Operation.DISPATCH);
+        try {
+            // listeners may remove themselves
+            for (NetworkTopologyListener listener : Lists.newArrayList(deferredListeners)) {
+                listener.topologyChanged(changes);
+            }
+        } finally {
+            statistics.end(Operation.DISPATCH, startTime, deferredListeners.size());
+        }
+    }
+
     public void addNetworkingBlock(NetworkNode networkNode) {
-        adjacencyList.put(networkNode, Sets.<NetworkNode>newHashSet());
+        updateNetworkingBlocks(Collections.emptyList(), Collections.singletonList(networkNode));
+    }
+
+    public void addNetworkingBlocks(Collection<? extends NetworkNode> networkNodes) {
+        updateNetworkingBlocks(Collections.emptyList(), networkNodes);
+    }
+
+    public void removeNetworkingBlock(NetworkNode networkNode) {
+        updateNetworkingBlocks(Collections.singletonList(networkNode), Collections.emptyList());
+    }
 
-        // loop through all the nodes and find connections
-        for (NetworkNode existingNode : adjacencyList.keySet()) {
-            // ensure that there is mutual agreement between the nodes about a positive connection
-            if (!networkNode.equals(existingNode) && networkNode.isConnectedTo(existingNode) && existingNode.isConnectedTo(networkNode)) {
-                adjacencyList.get(existingNode).add(networkNode);
-                adjacencyList.get(networkNode).add(existingNode);
-            }
-        }
-
-        addToNetwork(networkNode);
-    }
-
-    private void addToNetwork(NetworkNode networkNode) {
-        // check the nodes connecting to this one, see if they are all from the same network.  If they are not, merge the networks together
-        Set<NetworkNode> connectedNodes = adjacencyList.get(networkNode);
-        Network network = null;
-        for (NetworkNode connectedNode : Iterables.filter(connectedNodes, x -> !x.isLeaf())) {
-            for (Network foundNetwork : getNetworks(connectedNode)) {
-                if (foundNetwork == null) {
-                    // abort, this should not happen
-                    return;
-                } else if (network == null) {
-                    // this is the first network we found
-                    network = foundNetwork;
-                } else if (foundNetwork != network) {
-                    // connect networks that have now become connected because of this new node
-                    mergeNetworks(network, foundNetwork);
+    public void removeNetworkingBlocks(Collection<? extends NetworkNode> networkNodes) {
+        updateNetworkingBlocks(networkNodes, Collections.emptyList());
+    }
+
+    /**
+     * Removes and then adds the given nodes.  The networks of all the added nodes are worked out together, so that adding
+     * many connected nodes does not merge networks over and over.  Listeners hear about everything that changed at the end.
+     */
+    public void updateNetworkingBlocks(Collection<? extends NetworkNode> removedNodes, Collection<? extends NetworkNode> addedNodes) {
+        if (!removedNodes.isEmpty()) {
+            long startTime = statistics.start(Operation.REMOVE);
+            try {
+                for (NetworkNode networkNode : removedNodes) {
+                    removeFromNetwork(networkNode);
                 }
+            } finally {
+                statistics.end(Operation.REMOVE, startTime, removedNodes.size());
+            }
+        }
+
+        boolean nodesAdded = false;
+        if (!addedNodes.isEmpty()) {
+            long startTime = statistics.start(Operation.ADD);
+            try {
+                nodesAdded = addNewNodes(addedNodes);
+            } finally {
+                statistics.end(Operation.ADD, startTime, addedNodes.size());
             }
         }
 
-        if (network == null) {
-            network = new BasicNetwork();
-            allNetworks.put(network, Sets.<NetworkNode>newHashSet());
-            notifyNetworkAdded(network);
+        if (!removedNodes.isEmpty() || nodesAdded) {
+            topologyVersion++;
         }
+        dispatchChanges();
+    }
 
-        allNetworks.get(network).add(networkNode);
-        notifyNetworkingNodeAdded(network, networkNode);
+    /**
+     * @return whether any nodes were added
+     */
+    private boolean addNewNodes(Collection<? extends NetworkNode> addedNodes) {
+        List<NetworkNode> newNodes = Lists.newArrayListWithCapacity(addedNodes.size());
+        for (NetworkNode networkNode : addedNodes) {
+            if (!adjacencyList.containsKey(networkNode)) {
+                connectToExistingNodes(networkNode);
+                newNodes.add(networkNode);
+            }
+        }
+        addToNetworks(newNodes);
+        return !newNodes.isEmpty();
+    }
+
+    /**
+     * Fills an empty block network with many nodes at once, like {@link #addNetworkingBlocks}, but looks for the
+     * connections of block located nodes on the threads of the pool.  The nodes are indexed first, after which the index is
+     * only read, so every node can search its own neighborhood independently.  The block network itself must not be used by
+     * anything else until this returns.
+     * <p>
+     * This is meant to be called off the main thread on a block network nobody listens to yet, so it records no statistics
+     * and tells no listeners about the new networks.  The caller times the whole job.
+     */
+    void addNetworkingBlocksInParallel(Collection<? extends NetworkNode> networkNodes, ForkJoinPool pool) {
+        // every connection is between two new nodes, so that both of them find it
+        Preconditions.checkState(adjacencyList.isEmpty() && !hasQueuedChanges(), "Only an empty block network can be filled in parallel");
+        Preconditions.checkState(listeners.isEmpty() && deferredListeners.isEmpty(), "Nobody can hear about a block network filled in parallel");
+        List<NetworkNode> newNodes = Lists.newArrayListWithCapacity(networkNodes.size());
+        List<BlockLocationNetworkNode> locatedNodes = Lists.newArrayListWithCapacity(networkNodes.size());
+        for (NetworkNode networkNode : networkNodes) {
+            if (!adjacencyList.containsKey(networkNode)) {
+                adjacencyList.put(networkNode, Sets.newHashSet());
+                newNodes.add(networkNode);
+                if (networkNode instanceof BlockLocationNetworkNode) {
+                    locatedNodes.add((BlockLocationNetworkNode) networkNode);
+                    spatialIndex.add((BlockLocationNetworkNode) networkNode);
+                }
+            }
+        }
 
-        // ensure that all leaf nodes also are added to this network
-        for (NetworkNode leafNode : Iterables.filter(connectedNodes, x -> x.isLeaf())) {
-            // the special case where a leaf node is being merged into a normal network
-            if (adjacencyList.get(leafNode).size() == 1) {
-                for (Network leafNetwork : getNetworks(leafNode)) {
-                    allNetworks.remove(leafNetwork);
+        // a parallel stream started by a task of the pool runs on that pool rather than on the common one
+        List<List<NetworkNode>> connectedNodes = pool.submit(() -> locatedNodes.parallelStream().map(locationNode -> {
+            List<NetworkNode> connections = Lists.newArrayList();
+            spatialIndex.forEachWithin(locationNode.location(), locationNode.getMaximumGridDistance(), existingNode -> {
+                if (!locationNode.equals(existingNode) && locationNode.isConnectedTo(existingNode) && existingNode.isConnectedTo(locationNode)) {
+                    connections.add(existingNode);
                 }
+            });
+            return connections;
+        }).collect(Collectors.toList())).join();
+        for (int i = 0; i < locatedNodes.size(); i++) {
+            // both ends of a connection found each other, so each only needs to add its own side
+            NetworkNode locationNode = locatedNodes.get(i);
+            for (NetworkNode connectedNode : connectedNodes.get(i)) {
+                adjacencyList.get(locationNode).add(connectedNode);
+                pathFinder.connectionAdded(locationNode, connectedNode);
             }
-            if (!allNetworks.get(network).contains(leafNode)) {
-                allNetworks.get(network).add(leafNode);
-                notifyNetworkingNodeAdded(network, leafNode);
+        }
+
+        // there is no telling what the other nodes connect to, they are tried against every node before them like usual
+        List<NetworkNode> pairedNodes = Lists.newArrayList(locatedNodes);
+        for (NetworkNode networkNode : newNodes) {
+            if (!(networkNode instanceof BlockLocationNetworkNode)) {
+                for (NetworkNode pairedNode : pairedNodes) {
+                    connect(networkNode, pairedNode);
+                }
+                pairedNodes.add(networkNode);
             }
         }
 
+        addToNetworks(newNodes);
+        if (!newNodes.isEmpty()) {
+            topologyVersion++;
+        }
+        // there is nobody to tell about the changes
+        delta = new NetworkTopologyDelta();
     }
 
-    public Collection<Network> getNetworks(NetworkNode networkNode) {
-        Set<Network> networks = Sets.newHashSet();
-        for (Network network : allNetworks.keySet()) {
-            Set<NetworkNode> nodes = allNetworks.get(network);
-            if (nodes.contains(networkNode)) {
-                networks.add(network);
+    /**
+     * Queues a node to be added the next time the queued changes are applied.
+     */
+    public void queueAddNetworkingBlock(NetworkNode networkNode) {
+        queuedAdditions.add(networkNode);
+    }
+
+    /**
+     * Queues a node to be removed the next time the queued changes are applied.  Removing a node that is still queued to be
+     * added just forgets about it.
+     */
+    public void queueRemoveNetworkingBlock(NetworkNode networkNode) {
+        if (!queuedAdditions.remove(networkNode)) {
+            queuedRemovals.add(networkNode);
+        }
+    }
+
+    /**
+     * Adds all nodes of the snapshot with the connections and networks they had when it was written, without working any
+     * of them out again.  The whole topology is restored at once, also the nodes of chunks that are not loaded yet, so
+     * that networks spanning many chunks keep their shape while the chunks load one after another.  It is up to the caller
+     * to remove the nodes that turn out to be gone.
+     * <p>
+     * The snapshot does not know about the nodes that are there already, its nodes are added the usual way if there are
+     * any.
+     *
+     * @return the nodes of the snapshot
+     */
+    public List<NetworkNode> restoreSnapshot(BlockNetworkSnapshot snapshot) {
+        List<NetworkNode> snapshotNodes = Lists.newArrayListWithCapacity(snapshot.getNodeCount());
+        for (int index = 0; index < snapshot.getNodeCount(); index++) {
+            snapshotNodes.add(snapshot.getNode(index));
+        }
+        if (!adjacencyList.isEmpty() || hasQueuedChanges()) {
+            addNetworkingBlocks(snapshotNodes);
+            return snapshotNodes;
+        }
+
+        long startTime = statistics.start(Operation.ADD);
+        try {
+            for (NetworkNode networkNode : snapshotNodes) {
+                adjacencyList.put(networkNode, Sets.newHashSet());
+                spatialIndex.add((BlockLocationNetworkNode) networkNode);
+            }
+            for (int index = 0; index < snapshotNodes.size(); index++) {
+                NetworkNode networkNode = snapshotNodes.get(index);
+                for (int adjacentIndex : snapshot.getAdjacentNodes(index)) {
+                    // each connection once
+                    if (adjacentIndex > index) {
+                        NetworkNode adjacentNode = snapshotNodes.get(adjacentIndex);
+                        adjacencyList.get(networkNode).add(adjacentNode);
+                        adjacencyList.get(adjacentNode).add(networkNode);
+                        pathFinder.connectionAdded(networkNode, adjacentNode);
+                    }
+                }
+            }
+            for (int networkIndex = 0; networkIndex < snapshot.getNetworkCount(); networkIndex++) {
+                Network network = createNetwork();
+                for (int index : snapshot.getNetworkNodes(networkIndex)) {
+                    addNetworkingNode(network, snapshotNodes.get(index));
+                }
             }
+        } finally {
+            statistics.end(Operation.ADD, startTime, snapshotNodes.size());
+        }
+        if (!snapshotNodes.isEmpty()) {
+            topologyVersion++;
         }
+        dispatchChanges();
+        return snapshotNodes;
+    }
 
-        return networks;
+    public boolean hasQueuedChanges() {
+        return !queuedAdditions.isEmpty() || !queuedRemovals.isEmpty();
     }
 
-    private void mergeNetworks(Network target, Network source) {
-        Set<NetworkNode> nodesInSource = allNetworks.get(source);
-        for (NetworkNode node : nodesInSource) {
-            notifyNetworkingNodeRemoved(source, node);
+    public void applyQueuedChanges() {
+        if (hasQueuedChanges()) {
+            List<NetworkNode> removedNodes = Lists.newArrayList(queuedRemovals);
+            List<NetworkNode> addedNodes = Lists.newArrayList(queuedAdditions);
+            queuedRemovals.clear();
+            queuedAdditions.clear();
+            updateNetworkingBlocks(removedNodes, addedNodes);
         }
-        allNetworks.remove(source);
-        notifyNetworkRemoved(source);
+    }
 
-        allNetworks.get(target).addAll(nodesInSource);
-        for (NetworkNode node : nodesInSource) {
-            notifyNetworkingNodeAdded(target, node);
+    private void connectToExistingNodes(NetworkNode networkNode) {
+        adjacencyList.put(networkNode, Sets.<NetworkNode>newHashSet());
+
+        if (networkNode instanceof BlockLocationNetworkNode) {
+            // only the nodes within reach of this one can connect to it
+            BlockLocationNetworkNode locationNode = (BlockLocationNetworkNode) networkNode;
+            spatialIndex.forEachWithin(locationNode.location(), locationNode.getMaximumGridDistance(), existingNode -> connect(networkNode, existingNode));
+            spatialIndex.add(locationNode);
+        } else {
+            // there is no telling what this node connects to, loop through all the nodes and find connections
+            for (NetworkNode existingNode : adjacencyList.keySet()) {
+                connect(networkNode, existingNode);
+            }
         }
     }
 
-    public void removeNetworkingBlock(NetworkNode networkNode) {
-        Set<NetworkNode> connectedNodes = adjacencyList.get(networkNode);
+    private void connect(NetworkNode networkNode, NetworkNode existingNode) {
+        // ensure that there is mutual agreement between the nodes about a positive connection
+        if (!networkNode.equals(existingNode) && networkNode.isConnectedTo(existingNode) && existingNode.isConnectedTo(networkNode)) {
+            adjacencyList.get(existingNode).add(networkNode);
+            adjacencyList.get(networkNode).add(existingNode);
+            pathFinder.connectionAdded(networkNode, existingNode);
+        }
+    }
 
-        for (Network originalNetwork : getNetworks(networkNode)) {
-            allNetworks.get(originalNetwork).remove(networkNode);
-            notifyNetworkingNodeRemoved(originalNetwork, networkNode);
+    private void addToNetworks(List<NetworkNode> newNodes) {
+        // find out which new non leaf nodes and existing networks end up in the same network, without merging anything yet
+        Map<Object, Object> parents = Maps.newLinkedHashMap();
+        for (NetworkNode newNode : Iterables.filter(newNodes, x -> !x.isLeaf())) {
+            parents.putIfAbsent(newNode, newNode);
+            for (NetworkNode connectedNode : Iterables.filter(adjacencyList.get(newNode), x -> !x.isLeaf())) {
+                // existing nodes stand in for their whole network
+                Object connected = nodeNetworks.containsKey(connectedNode) ? getNonLeafNetwork(connectedNode) : connectedNode;
+                parents.putIfAbsent(connected, connected);
+                union(parents, newNode, connected);
+            }
+        }
 
-            adjacencyList.remove(networkNode);
-            // remove all adjacent links
-            for (NetworkNode connectedNode : connectedNodes) {
-                adjacencyList.get(connectedNode).remove(networkNode);
+        Map<Object, List<Network>> existingNetworksByGroup = Maps.newLinkedHashMap();
+        Map<Object, List<NetworkNode>> newNodesByGroup = Maps.newLinkedHashMap();
+        for (Object member : parents.keySet()) {
+            Object group = find(parents, member);
+            newNodesByGroup.computeIfAbsent(group, k -> Lists.newArrayList());
+            List<Network> existingNetworks = existingNetworksByGroup.computeIfAbsent(group, k -> Lists.newArrayList());
+            if (member instanceof Network) {
+                existingNetworks.add((Network) member);
+            } else {
+                newNodesByGroup.get(group).add((NetworkNode) member);
             }
+        }
 
-            Queue<NetworkNode> needsNewNetwork = Queues.newArrayDeque();
-            needsNewNetwork.addAll(connectedNodes);
+        for (Map.Entry<Object, List<NetworkNode>> group : newNodesByGroup.entrySet()) {
+            List<Network> existingNetworks = existingNetworksByGroup.get(group.getKey());
+            Network network;
+            if (existingNetworks.isEmpty()) {
+                network = createNetwork();
+            } else {
+                // everything is merged into the largest network, so that as few nodes as possible have to move
+                network = Collections.max(existingNetworks, Comparator.comparingInt(x -> allNetworks.get(x).size()));
+                for (Network otherNetwork : existingNetworks) {
+                    if (otherNetwork != network) {
+                        // connect networks that have now become connected because of the new nodes
+                        mergeNetworks(network, otherNetwork);
+                    }
+                }
+            }
 
-            // ensure that the network is still intact, if not,  split it up
-            // touch all nodes in the starting from each of the connected nodes to the removed node
-            // if a nodes is found in a previously touched list, it connects to that network
-            Map<NetworkNode, NetworkNode> visitedNodes = Maps.newHashMap(); // where Key = a node in the network, Value = the connected node it originated from
-            for (NetworkNode connectedNode : connectedNodes) {
-                visitedNodes.put(connectedNode, connectedNode);
+            for (NetworkNode newNode : group.getValue()) {
+                addNetworkingNode(network, newNode);
+            }
+            // ensure that all leaf nodes also are added to this network
+            for (NetworkNode newNode : group.getValue()) {
+                for (NetworkNode leafNode : Iterables.filter(adjacencyList.get(newNode), x -> x.isLeaf())) {
+                    removeIsolatedLeafNetwork(leafNode);
+                    addNetworkingNode(network, leafNode);
+                }
             }
+        }
 
-            Queue<NetworkNode> currentNodes = Queues.newArrayDeque();
+        // a leaf node joins the networks around it, but does not pass connectivity through itself
+        Set<NetworkNode> addedLeafNodes = Sets.newHashSet();
+        for (NetworkNode leafNode : Iterables.filter(newNodes, x -> x.isLeaf())) {
+            Set<NetworkNode> connectedNodes = adjacencyList.get(leafNode);
             for (NetworkNode connectedNode : connectedNodes) {
-                if (needsNewNetwork.size() == 0) {
-                    // we have already verified that nothing needs a new network
-                    return;
+                if (!connectedNode.isLeaf()) {
+                    addNetworkingNode(getNonLeafNetwork(connectedNode), leafNode);
+                } else if (!addedLeafNodes.contains(connectedNode)) {
+                    // two leaf nodes next to each other form their own little network
+                    removeIsolatedLeafNetwork(connectedNode);
+                    Network pairNetwork = createNetwork();
+                    addNetworkingNode(pairNetwork, connectedNode);
+                    addNetworkingNode(pairNetwork, leafNode);
                 }
+            }
+            if (connectedNodes.isEmpty()) {
+                addNetworkingNode(createNetwork(), leafNode);
+            }
+            addedLeafNodes.add(leafNode);
+        }
+    }
 
-                currentNodes.add(connectedNode);
+    private static Object find(Map<Object, Object> parents, Object member) {
+        Object root = member;
+        while (parents.get(root) != root) {
+            root = parents.get(root);
+        }
+        // point everything on the way directly at the root
+        Object current = member;
+        while (current != root) {
+            Object next = parents.get(current);
+            parents.put(current, root);
+            current = next;
+        }
+        return root;
+    }
 
-                // search through the nodes connecting to this one
-                while (currentNodes.size() > 0) {
-                    NetworkNode currentNode = currentNodes.poll();
-                    if (visitedNodes.containsKey(currentNode) && currentNode != connectedNode) {
-                        // we have visited this node already
-                        needsNewNetwork.remove(currentNode);
-                    } else {
-                        for (NetworkNode node : adjacencyList.get(currentNode)) {
-                            // add all these adjacent nodes to the list of nodes to visit
-                            currentNodes.add(node);
-                        }
+    private static void union(Map<Object, Object> parents, Object first, Object second) {
+        Object firstRoot = find(parents, first);
+        Object secondRoot = find(parents, second);
+        if (firstRoot != secondRoot) {
+            parents.put(secondRoot, firstRoot);
+        }
+    }
+
+    /**
+     * A leaf node without any connections gets a network of its own, which is no longer needed once it connects to something.
+     */
+    private void removeIsolatedLeafNetwork(NetworkNode leafNode) {
+        Set<Network> leafNetworks = nodeNetworks.get(leafNode);
+        if (leafNetworks.size() == 1) {
+            Network leafNetwork = leafNetworks.iterator().next();
+            if (allNetworks.get(leafNetwork).size() == 1) {
+                removeNetworkingNode(leafNetwork, leafNode);
+                removeNetwork(leafNetwork);
+            }
+        }
+    }
+
+    private Network getNonLeafNetwork(NetworkNode networkNode) {
+        // a non leaf node is always part of exactly one network
+        return nodeNetworks.get(networkNode).iterator().next();
+    }
+
+    public Collection<Network> getNetworks(NetworkNode networkNode) {
+        return Collections.unmodifiableSet(nodeNetworks.get(networkNode));
+    }
+
+    private void mergeNetworks(Network target, Network source) {
+        long startTime = statistics.start(Operation.MERGE);
+        int movedNodeCount = 0;
+        try {
+            movedNodeCount = moveNetworkNodes(target, source);
+        } finally {
+            statistics.end(Operation.MERGE, startTime, movedNodeCount);
+        }
+    }
+
+    private int moveNetworkNodes(Network target, Network source) {
+        Set<NetworkNode> targetNodes = allNetworks.get(target);
+        // leaf nodes can already be part of both networks, they just leave the source
+        for (NetworkNode node : Lists.newArrayList(allNetworks.get(source))) {
+            if (targetNodes.contains(node)) {
+                removeNetworkingNode(source, node);
+            }
+        }
+
+        Set<NetworkNode> movedNodes = allNetworks.remove(source);
+        for (NetworkNode node : movedNodes) {
+            nodeNetworks.remove(node, source);
+            nodeNetworks.put(node, target);
+        }
+        targetNodes.addAll(movedNodes);
+        delta.networksMerged(source, target, movedNodes);
+        networkChanged(source);
+        networkChanged(target);
+        return movedNodes.size();
+    }
+
+    private void removeFromNetwork(NetworkNode networkNode) {
+        Set<NetworkNode> connectedNodes = adjacencyList.remove(networkNode);
+        if (connectedNodes == null) {
+            return;
+        }
+        if (networkNode instanceof BlockLocationNetworkNode) {
+            spatialIndex.remove((BlockLocationNetworkNode) networkNode);
+        }
+        // remove all adjacent links
+        for (NetworkNode connectedNode : connectedNodes) {
+            adjacencyList.get(connectedNode).remove(networkNode);
+        }
+
+        if (networkNode.isLeaf()) {
+            for (Network originalNetwork : Lists.newArrayList(nodeNetworks.get(networkNode))) {
+                removeNetworkingNode(originalNetwork, networkNode);
+                Set<NetworkNode> remainingNodes = allNetworks.get(originalNetwork);
+                if (remainingNodes.size() == 1) {
+                    NetworkNode remainingNode = remainingNodes.iterator().next();
+                    if (remainingNode.isLeaf() && !adjacencyList.get(remainingNode).isEmpty()) {
+                        // this was a network between two leaf nodes, it only survives if the other leaf node is now on its own
+                        removeNetworkingNode(originalNetwork, remainingNode);
                     }
-                    visitedNodes.put(currentNode, connectedNode);
+                }
+                if (allNetworks.get(originalNetwork).isEmpty()) {
+                    removeNetwork(originalNetwork);
+                }
+            }
+            return;
+        }
+
+        Network originalNetwork = getNonLeafNetwork(networkNode);
+        removeNetworkingNode(originalNetwork, networkNode);
+
+        // ensure that the network is still intact, if not, split it up
+        Set<NetworkNode> leafNodesToCheck = Sets.newHashSet(Iterables.filter(connectedNodes, x -> x.isLeaf()));
+        List<NetworkNode> nonLeafNodes = Lists.newArrayList(Iterables.filter(connectedNodes, x -> !x.isLeaf()));
+        List<Set<NetworkNode>> splitComponents = Collections.emptyList();
+        if (nonLeafNodes.size() > 1) {
+            // only a node between several others can split the network, finding out whether it did is what can take long
+            long startTime = statistics.start(Operation.SPLIT);
+            try {
+                splitComponents = findSplitComponents(nonLeafNodes);
+            } finally {
+                statistics.end(Operation.SPLIT, startTime, splitComponents.stream().mapToInt(Set::size).sum());
+            }
+        }
+        for (Set<NetworkNode> splitNodes : splitComponents) {
+            Network newNetwork = createNetwork();
+            for (NetworkNode node : splitNodes) {
+                removeNetworkingNode(originalNetwork, node);
+                addNetworkingNode(newNetwork, node);
+                for (NetworkNode leafNode : Iterables.filter(adjacencyList.get(node), x -> x.isLeaf())) {
+                    addNetworkingNode(newNetwork, leafNode);
+                    leafNodesToCheck.add(leafNode);
+                }
+            }
+        }
+
+        // leaf nodes only stay in the original network if they are still connected to some part of it
+        for (NetworkNode leafNode : leafNodesToCheck) {
+            if (allNetworks.get(originalNetwork).contains(leafNode) && !isConnectedToNetwork(leafNode, originalNetwork)) {
+                removeNetworkingNode(originalNetwork, leafNode);
+                if (nodeNetworks.get(leafNode).isEmpty()) {
+                    // nothing else around this leaf node, it is on its own now
+                    addNetworkingNode(createNetwork(), leafNode);
                 }
             }
+        }
 
-            // reuse the existing network
-            needsNewNetwork.poll();
-            // create new networks
-            for (NetworkNode node : needsNewNetwork) {
-                Network newNetwork = new BasicNetwork();
-                Set<NetworkNode> newNetworkNodes = Sets.newHashSet();
-                allNetworks.put(newNetwork, newNetworkNodes);
-                notifyNetworkAdded(newNetwork);
-                Set<NetworkNode> originalNetworkNodes = allNetworks.get(originalNetwork);
-                for (Map.Entry<NetworkNode, NetworkNode> item : visitedNodes.entrySet()) {
-                    if (item.getValue() == node) {
-                        originalNetworkNodes.remove(item.getKey());
-                        notifyNetworkingNodeRemoved(originalNetwork, item.getKey());
-                        newNetworkNodes.add(item.getKey());
-                        notifyNetworkingNodeAdded(newNetwork, item.getKey());
+        if (allNetworks.get(originalNetwork).isEmpty()) {
+            // this network is empty
+            removeNetwork(originalNetwork);
+        }
+    }
 
+    private boolean isConnectedToNetwork(NetworkNode leafNode, Network network) {
+        for (NetworkNode connectedNode : adjacencyList.get(leafNode)) {
+            if (!connectedNode.isLeaf() && nodeNetworks.containsEntry(connectedNode, network)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds out which parts of a network came apart after a node was removed from it.
+     * <p>
+     * A search is started from each of the removed node's neighbors, and the searches take turns visiting one node at a time.
+     * Searches that run into each other are part of the same piece and continue together.  Once all but one piece has run
+     * out of nodes to visit, the pieces that ran out are the ones that split off, and the remaining piece keeps the network.
+     * This way only the nodes of the smaller pieces are ever visited in full, no matter how large the network is.
+     *
+     * @param startNodes the non leaf neighbors of the removed node
+     * @return the non leaf nodes of each piece that needs a network of its own
+     */
+    private List<Set<NetworkNode>> findSplitComponents(List<NetworkNode> startNodes) {
+        int searchCount = startNodes.size();
+        if (searchCount < 2) {
+            return Collections.emptyList();
+        }
+
+        // the searches are joined together with a union find as they meet
+        int[] parents = new int[searchCount];
+        int[] pendingSearches = new int[searchCount];
+        int[] sizes = new int[searchCount];
+        List<Queue<NetworkNode>> frontiers = Lists.newArrayListWithCapacity(searchCount);
+        Map<NetworkNode, Integer> visitedBy = Maps.newHashMap();
+        for (int i = 0; i < searchCount; i++) {
+            parents[i] = i;
+            pendingSearches[i] = 1;
+            sizes[i] = 1;
+            Queue<NetworkNode> frontier = Queues.newArrayDeque();
+            frontier.add(startNodes.get(i));
+            frontiers.add(frontier);
+            visitedBy.put(startNodes.get(i), i);
+        }
+
+        int activePieces = searchCount;
+        while (activePieces > 1) {
+            for (int i = 0; i < searchCount && activePieces > 1; i++) {
+                Queue<NetworkNode> frontier = frontiers.get(i);
+                if (frontier.isEmpty()) {
+                    continue;
+                }
+                int piece = findPiece(parents, i);
+                NetworkNode currentNode = frontier.poll();
+                for (NetworkNode node : adjacencyList.get(currentNode)) {
+                    if (node.isLeaf()) {
+                        // leaf nodes do not pass connectivity through themselves
+                        continue;
+                    }
+                    Integer otherSearch = visitedBy.get(node);
+                    if (otherSearch == null) {
+                        visitedBy.put(node, i);
+                        sizes[piece]++;
+                        frontier.add(node);
+                    } else {
+                        int otherPiece = findPiece(parents, otherSearch);
+                        if (otherPiece != piece) {
+                            // these searches met, so they are in the same piece
+                            parents[otherPiece] = piece;
+                            sizes[piece] += sizes[otherPiece];
+                            if (pendingSearches[otherPiece] > 0 && pendingSearches[piece] > 0) {
+                                activePieces--;
+                            }
+                            pendingSearches[piece] += pendingSearches[otherPiece];
+                        }
                     }
                 }
+                if (frontier.isEmpty()) {
+                    pendingSearches[piece]--;
+                    if (pendingSearches[piece] == 0) {
+                        activePieces--;
+                    }
+                }
+            }
+        }
 
+        // the piece still being searched is the biggest one, it keeps the original network
+        int keptPiece = -1;
+        for (int i = 0; i < searchCount; i++) {
+            if (parents[i] == i && (keptPiece == -1 || pendingSearches[i] > 0 || (pendingSearches[keptPiece] == 0 && sizes[i] > sizes[keptPiece]))) {
+                keptPiece = i;
             }
+        }
 
-            if (allNetworks.get(originalNetwork).size() == 0) {
-                // this network is empty
-                allNetworks.remove(originalNetwork);
-                notifyNetworkRemoved(originalNetwork);
+        Map<Integer, Set<NetworkNode>> splitComponents = Maps.newHashMap();
+        for (Map.Entry<NetworkNode, Integer> visited : visitedBy.entrySet()) {
+            int piece = findPiece(parents, visited.getValue());
+            if (piece != keptPiece) {
+                splitComponents.computeIfAbsent(piece, k -> Sets.newHashSet()).add(visited.getKey());
             }
         }
+        return Lists.newArrayList(splitComponents.values());
     }
 
-    public Collection<Network> getNetworks() {
-        return Collections.unmodifiableCollection(new ArrayList<>(allNetworks.keySet()));
+    private static int findPiece(int[] parents, int search) {
+        int piece = search;
+        while (parents[piece] != piece) {
+            parents[piece] = parents[parents[piece]];
+            piece = parents[piece];
+        }
+        return piece;
+    }
+
+    private Network createNetwork() {
+        Network network = new BasicNetwork();
+        allNetworks.put(network, Sets.newHashSet());
+        delta.networkAdded(network);
+        return network;
+    }
+
+    private void removeNetwork(Network network) {
+        allNetworks.remove(network);
+        delta.networkRemoved(network);
+        networkChanged(network);
     }
 
-    private void notifyNetworkAdded(Network network) {
-        for (NetworkTopologyListener listener : listeners) {
-            listener.networkAdded(network);
+    private void addNetworkingNode(Network network, NetworkNode networkNode) {
+        if (allNetworks.get(network).add(networkNode)) {
+            nodeNetworks.put(networkNode, network);
+            delta.networkingNodeAdded(network, networkNode);
+            networkChanged(network);
         }
     }
 
-    private void notifyNetworkRemoved(Network network) {
-        for (NetworkTopologyListener listener : listeners) {
-            listener.networkRemoved(network);
+    private void removeNetworkingNode(Network network, NetworkNode networkNode) {
+        if (allNetworks.get(network).remove(networkNode)) {
+            nodeNetworks.remove(networkNode, network);
+            delta.networkingNodeRemoved(network, networkNode);
+            networkChanged(network);
         }
     }
 
-    private void notifyNetworkingNodeAdded(Network network, NetworkNode networkingNode) {
-        for (NetworkTopologyListener listener : listeners) {
-            listener.networkingNodeAdded(network, networkingNode);
+    private void networkChanged(Network network) {
+        distanceFields.remove(network);
+        BasicNetwork basicNetwork = (BasicNetwork) network;
+        basicNetwork.topologyVersion++;
+        basicNetwork.membershipVersion++;
+    }
+
+    /**
+     * To be called when what the node stands for changed without the node itself changing, e.g. its entity got a
+     * different component, so that anything worked out from the members of its networks is done again.
+     */
+    void membershipChanged(NetworkNode networkNode) {
+        for (Network network : nodeNetworks.get(networkNode)) {
+            ((BasicNetwork) network).membershipVersion++;
+            // the sources are usually picked by what the nodes stand for
+            distanceFields.remove(network);
+        }
+        for (NetworkChains chains : networkChains.values()) {
+            chains.nodeChanged(networkNode);
         }
     }
 
-    private void notifyNetworkingNodeRemoved(Network network, NetworkNode networkingNode) {
-        for (NetworkTopologyListener listener : listeners) {
-            listener.networkingNodeRemoved(network, networkingNode);
+    /**
+     * @return a number that changes whenever nodes are added or removed
+     */
+    public long getTopologyVersion() {
+        return topologyVersion;
+    }
+
+    /**
+     * @return a number that grows whenever nodes join or leave the network
+     */
+    public long getTopologyVersion(Network network) {
+        return ((BasicNetwork) network).topologyVersion;
+    }
+
+    /**
+     * @return a number that grows along with the topology version, and also whenever {@link #membershipChanged} is called
+     * for one of the nodes of the network
+     */
+    public long getMembershipVersion(Network network) {
+        return ((BasicNetwork) network).membershipVersion;
+    }
+
+    /**
+     * @return a read only view of all networks, it changes along with them
+     */
+    public Collection<Network> getNetworks() {
+        return Collections.unmodifiableSet(allNetworks.keySet());
+    }
+
+    private void dispatchChanges() {
+        NetworkTopologyDelta changes = delta;
+        delta = new NetworkTopologyDelta();
+        if (!changes.isEmpty()) {
+            long startTime = statistics.start(Operation.DISPATCH);
+            try {
+                for (NetworkTopologyListener listener : listeners) {
+                    listener.topologyChanged(changes);
+                }
+            } finally {
+                statistics.end(Operation.DISPATCH, startTime, listeners.size());
+            }
+            if (!deferredListeners.isEmpty()) {
+                deferredDelta.addAll(changes);
+            }
         }
     }
 
@@ -231,13 +820,32 @@ class BlockNetwork {
         return allNetworks.get(network);
     }
 
+    /**
+     * @return the block located nodes within the region, found through the spatial index without going through every node
+     */
+    public List<NetworkNode> getNodesInRegion(BlockRegion region) {
+        List<NetworkNode> nodes = Lists.newArrayList();
+        spatialIndex.forEachInBox(region.minX(), region.minY(), region.minZ(), region.maxX(), region.maxY(), region.maxZ(), nodes::add);
+        return nodes;
+    }
+
     private class BasicNetwork implements Network {
+        private long topologyVersion;
+        private long membershipVersion;
     }
 
     public boolean hasNetworkingNode(Network network, NetworkNode networkNode) {
         return allNetworks.get(network).contains(networkNode);
     }
 
+    public boolean hasNetworkingNode(NetworkNode networkNode) {
+        return adjacencyList.containsKey(networkNode);
+    }
+
+    BlockNetworkStatistics getStatistics() {
+        return statistics;
+    }
+
     public int getNetworkSize() {
         return adjacencyList.size();
     }
@@ -259,65 +867,166 @@ class BlockNetwork {
         return isInDistance(distance, from, to, null);
     }
 
+    /**
+     * Only searches up to the given distance, so this is cheaper than {@link #getDistance} for nodes that are far apart.
+     * Nodes that are not connected at all are not in distance.
+     */
     public boolean isInDistance(int distance, NetworkNode from, NetworkNode to, BiPredicate<NetworkNode, NetworkNode> edgeFilter) {
-        return getDistance(from, to, edgeFilter) <= distance;
+        if (from.equals(to)) {
+            return distance >= 0;
+        }
+
+        PathQuery query = new PathQuery(from, to, edgeFilter);
+        List<NetworkNode> path = getCachedPath(query);
+        if (path == null) {
+            path = findPath(from, to, edgeFilter, distance);
+            if (path == null) {
+                return false;
+            }
+            pathCache.put(query, path);
+        }
+        return !path.isEmpty() && path.size() <= distance;
     }
 
     public List<NetworkNode> getPath(NetworkNode start, NetworkNode end) {
         return getPath(start, end, null);
     }
 
-    /*
-     * Further optimizations: there is no heuristic part of this to avoid searching through all nodes
+    /**
+     * The path goes from start up to the node before end, so its size is the distance between the nodes.  It is empty if the
+     * nodes are the same or not connected.  Paths are cached until the topology changes, the returned list can not be modified.
      */
     public List<NetworkNode> getPath(NetworkNode start, NetworkNode end, BiPredicate<NetworkNode, NetworkNode> edgeFilter) {
         if (start.equals(end)) {
             // we win already
-            return Lists.newArrayList();
+            return ImmutableList.of();
         }
 
-        Queue<NetworkNode> currentNodes = Queues.newArrayDeque();
-        Map<NetworkNode, NetworkNode> cameFrom = Maps.newHashMap();
-        Map<NetworkNode, Integer> distances = Maps.newHashMap();
-        Set<NetworkNode> visitedNodes = Sets.newHashSet();
-
-        currentNodes.add(start);
-        distances.put(start, 0);
-        visitedNodes.add(start);
-        while (currentNodes.size() > 0) {
-            NetworkNode currentNode = currentNodes.poll();
+        PathQuery query = new PathQuery(start, end, edgeFilter);
+        List<NetworkNode> path = getCachedPath(query);
+        if (path == null) {
+            path = findPath(start, end, edgeFilter, Integer.MAX_VALUE);
+            if (path == null) {
+                path = ImmutableList.of();
+            }
+            pathCache.put(query, path);
+        }
+        return path;
+    }
 
-            int currentConnectedDistance = distances.get(currentNode) + 1;
-            for (NetworkNode connectedNode : adjacencyList.get(currentNode)) {
-                // filter out any undesired edges
-                if (edgeFilter != null) {
-                    if (!edgeFilter.test(currentNode, connectedNode)) {
-                        continue;
+    /**
+     * Only searches that miss the path cache are timed, cached paths are found too quickly to be worth it.
+     */
+    private List<NetworkNode> findPath(NetworkNode start, NetworkNode end, BiPredicate<NetworkNode, NetworkNode> edgeFilter, int maxDistance) {
+        long startTime = statistics.start(Operation.PATH);
+        List<NetworkNode> path = null;
+        try {
+            path = pathFinder.findPath(start, end, edgeFilter, maxDistance);
+        } finally {
+            statistics.end(Operation.PATH, startTime, path != null ? path.size() : 0);
+        }
+        return path;
+    }
+
+    /**
+     * The distance of every node of the network to the nearest source node, only going through nodes of the network.  The
+     * field is cached until the nodes of the network change or {@link #membershipChanged} is called for one of them, so
+     * passing the same predicate again is cheap.
+     */
+    public NetworkDistanceField computeDistanceField(Network network, Predicate<NetworkNode> sources) {
+        Set<NetworkNode> networkNodes = allNetworks.get(network);
+        if (networkNodes == null) {
+            return new NetworkDistanceField(0);
+        }
+
+        Map<Predicate<NetworkNode>, NetworkDistanceField> fields = distanceFields.computeIfAbsent(network,
+                k -> new LinkedHashMap<Predicate<NetworkNode>, NetworkDistanceField>(4, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Predicate<NetworkNode>, NetworkDistanceField> eldest) {
+                        return size() > DISTANCE_FIELD_CACHE_SIZE;
                     }
-                }
+                });
+        NetworkDistanceField field = fields.get(sources);
+        if (field == null) {
+            field = findDistances(networkNodes, sources);
+            fields.put(sources, field);
+        }
+        return field;
+    }
 
-                // update the distance and cameFrom
-                if (!distances.containsKey(connectedNode) || distances.get(connectedNode) > currentConnectedDistance) {
-                    distances.put(connectedNode, currentConnectedDistance);
-                    cameFrom.put(connectedNode, currentNode);
-                }
-                if (!visitedNodes.contains(connectedNode)) {
-                    visitedNodes.add(connectedNode);
+    /**
+     * The network with its runs of nodes with two connections collapsed into chains.  The chains are kept up to date as
+     * nodes come and go, so passing the same capacities again only works out the chains that changed.  Only the chains of
+     * the last few capacities are kept.
+     *
+     * @param capacities how much each node lets through, the chains know the lowest capacity of their nodes
+     */
+    public CompressedNetwork computeCompressedNetwork(Network network, ToDoubleFunction<NetworkNode> capacities) {
+        NetworkChains chains = networkChains.get(capacities);
+        if (chains == null) {
+            chains = new NetworkChains(this, capacities);
+            networkChains.put(capacities, chains);
+            addTopologyListener(chains);
+        }
+        return chains.getCompressedNetwork(network);
+    }
+
+    private NetworkDistanceField findDistances(Set<NetworkNode> networkNodes, Predicate<NetworkNode> sources) {
+        NetworkDistanceField field = new NetworkDistanceField(networkNodes.size());
+        Queue<NetworkNode> currentNodes = Queues.newArrayDeque();
+        for (NetworkNode networkNode : networkNodes) {
+            if (sources.test(networkNode)) {
+                field.putIfAbsent(networkNode, 0);
+                currentNodes.add(networkNode);
+            }
+        }
+
+        while (!currentNodes.isEmpty()) {
+            NetworkNode currentNode = currentNodes.poll();
+            int connectedDistance = field.getDistance(currentNode) + 1;
+            for (NetworkNode connectedNode : adjacencyList.get(currentNode)) {
+                if (networkNodes.contains(connectedNode) && field.putIfAbsent(connectedNode, connectedDistance)) {
                     currentNodes.add(connectedNode);
                 }
             }
         }
+        return field;
+    }
+
+    private List<NetworkNode> getCachedPath(PathQuery query) {
+        if (pathCacheVersion != topologyVersion) {
+            pathCache.clear();
+            pathCacheVersion = topologyVersion;
+        }
+        return pathCache.get(query);
+    }
 
+    private static final class PathQuery {
+        private final NetworkNode start;
+        private final NetworkNode end;
+        private final BiPredicate<NetworkNode, NetworkNode> edgeFilter;
 
-        List<NetworkNode> path = Lists.newArrayList();
-        NetworkNode currentNode = cameFrom.get(end);
-        while (currentNode != null) {
-            path.add(currentNode);
-            currentNode = cameFrom.get(currentNode);
+        PathQuery(NetworkNode start, NetworkNode end, BiPredicate<NetworkNode, NetworkNode> edgeFilter) {
+            this.start = start;
+            this.end = end;
+            this.edgeFilter = edgeFilter;
         }
-        Collections.reverse(path);
 
-        return path;
-    }
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PathQuery)) {
+                return false;
+            }
+            PathQuery that = (PathQuery) o;
+            return start.equals(that.start) && end.equals(that.end) && Objects.equals(edgeFilter, that.edgeFilter);
+        }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(start, end, edgeFilter);
+        }
+    }
 }
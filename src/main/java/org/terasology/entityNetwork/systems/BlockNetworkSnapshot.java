@@ -0,0 +1,255 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.joml.Vector3i;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.entityNetwork.BlockLocationNetworkNode;
+import org.terasology.entityNetwork.Network;
+import org.terasology.entityNetwork.NetworkNode;
+import org.terasology.entityNetwork.SidedBlockLocationNetworkNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The nodes, connections and networks of a {@link BlockNetwork} in a compact binary form, so that the networks can be
+ * restored in one go when the world is loaded again instead of being worked out node by node.
+ * <p>
+ * Only the built in node types can be written.  Node indices are delta encoded variable length integers, and the data
+ * ends with a checksum so that damaged snapshots are thrown away rather than restored.
+ */
+final class BlockNetworkSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(BlockNetworkSnapshot.class);
+    private static final int MAGIC = 0x454e5331;
+    private static final int LEAF = 1;
+    private static final int SIDED = 2;
+
+    private final NetworkNode[] nodes;
+    // the indices of the nodes connected to each node, sorted
+    private final int[][] adjacentNodes;
+    // the indices of the nodes in each network, sorted
+    private final int[][] networks;
+
+    private BlockNetworkSnapshot(NetworkNode[] nodes, int[][] adjacentNodes, int[][] networks) {
+        this.nodes = nodes;
+        this.adjacentNodes = adjacentNodes;
+        this.networks = networks;
+    }
+
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public NetworkNode getNode(int index) {
+        return nodes[index];
+    }
+
+    public int[] getAdjacentNodes(int index) {
+        return adjacentNodes[index];
+    }
+
+    public int getNetworkCount() {
+        return networks.length;
+    }
+
+    public int[] getNetworkNodes(int network) {
+        return networks[network];
+    }
+
+    /**
+     * @return the snapshot of the block network, or null if it has nodes of a type that can not be written
+     */
+    public static byte[] write(BlockNetwork blockNetwork) {
+        Map<NetworkNode, Integer> indices = Maps.newLinkedHashMap();
+        for (Network network : blockNetwork.getNetworks()) {
+            for (NetworkNode node : blockNetwork.getNetworkNodes(network)) {
+                if (node.getClass() != BlockLocationNetworkNode.class && node.getClass() != SidedBlockLocationNetworkNode.class) {
+                    logger.debug("Not writing a snapshot of network {}, it has nodes of type {}", node.getNetworkId(), node.getClass());
+                    return null;
+                }
+                indices.putIfAbsent(node, indices.size());
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(MAGIC);
+            writeVarInt(output, indices.size());
+            for (NetworkNode node : indices.keySet()) {
+                BlockLocationNetworkNode locationNode = (BlockLocationNetworkNode) node;
+                boolean sided = node instanceof SidedBlockLocationNetworkNode;
+                output.writeByte((node.isLeaf() ? LEAF : 0) | (sided ? SIDED : 0));
+                writeVarInt(output, zigZag(locationNode.x()));
+                writeVarInt(output, zigZag(locationNode.y()));
+                writeVarInt(output, zigZag(locationNode.z()));
+                if (sided) {
+                    output.writeByte(((SidedBlockLocationNetworkNode) node).connectionSides);
+                } else {
+                    writeVarInt(output, locationNode.getMaximumGridDistance());
+                }
+            }
+
+            // every connection is written once, by the node with the lower index
+            for (Map.Entry<NetworkNode, Integer> node : indices.entrySet()) {
+                List<Integer> laterNodes = Lists.newArrayList();
+                for (NetworkNode adjacentNode : blockNetwork.getAdjacentNodes(node.getKey())) {
+                    int adjacentIndex = indices.get(adjacentNode);
+                    if (adjacentIndex > node.getValue()) {
+                        laterNodes.add(adjacentIndex);
+                    }
+                }
+                writeIndices(output, laterNodes);
+            }
+
+            writeVarInt(output, blockNetwork.getNetworks().size());
+            for (Network network : blockNetwork.getNetworks()) {
+                List<Integer> networkNodes = Lists.newArrayList();
+                for (NetworkNode node : blockNetwork.getNetworkNodes(network)) {
+                    networkNodes.add(indices.get(node));
+                }
+                writeIndices(output, networkNodes);
+            }
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes.toByteArray());
+        long value = checksum.getValue();
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            bytes.write((int) (value >>> shift));
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the snapshot, or null if the data is damaged or in an unknown format
+     */
+    public static BlockNetworkSnapshot read(String networkId, byte[] data) {
+        if (data == null || data.length < 8) {
+            return null;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(data, 0, data.length - 4);
+        long storedChecksum = 0;
+        for (int i = data.length - 4; i < data.length; i++) {
+            storedChecksum = (storedChecksum << 8) | (data[i] & 0xff);
+        }
+        if (checksum.getValue() != storedChecksum) {
+            logger.warn("Ignoring the damaged snapshot of network {}", networkId);
+            return null;
+        }
+
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4))) {
+            if (input.readInt() != MAGIC) {
+                logger.warn("Ignoring the snapshot of network {}, it is in an unknown format", networkId);
+                return null;
+            }
+
+            NetworkNode[] nodes = new NetworkNode[readVarInt(input)];
+            for (int i = 0; i < nodes.length; i++) {
+                int flags = input.readByte();
+                boolean isLeaf = (flags & LEAF) != 0;
+                Vector3i location = new Vector3i(unZigZag(readVarInt(input)), unZigZag(readVarInt(input)), unZigZag(readVarInt(input)));
+                if ((flags & SIDED) != 0) {
+                    nodes[i] = new SidedBlockLocationNetworkNode(networkId, isLeaf, location, input.readByte());
+                } else {
+                    nodes[i] = new BlockLocationNetworkNode(networkId, isLeaf, readVarInt(input), location);
+                }
+            }
+
+            List<List<Integer>> adjacentNodes = Lists.newArrayListWithCapacity(nodes.length);
+            for (int i = 0; i < nodes.length; i++) {
+                adjacentNodes.add(Lists.newArrayList());
+            }
+            for (int i = 0; i < nodes.length; i++) {
+                for (int laterNode : readIndices(input, nodes.length)) {
+                    adjacentNodes.get(i).add(laterNode);
+                    adjacentNodes.get(laterNode).add(i);
+                }
+            }
+
+            int[][] networks = new int[readVarInt(input)][];
+            for (int i = 0; i < networks.length; i++) {
+                networks[i] = readIndices(input, nodes.length);
+            }
+            return new BlockNetworkSnapshot(nodes, toSortedArrays(adjacentNodes), networks);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring the unreadable snapshot of network {}", networkId, e);
+            return null;
+        }
+    }
+
+    private static void writeIndices(DataOutputStream output, Collection<Integer> indices) throws IOException {
+        int[] sorted = indices.stream().mapToInt(Integer::intValue).sorted().toArray();
+        writeVarInt(output, sorted.length);
+        int previous = 0;
+        for (int index : sorted) {
+            writeVarInt(output, index - previous);
+            previous = index;
+        }
+    }
+
+    private static int[] readIndices(DataInputStream input, int nodeCount) throws IOException {
+        int[] indices = new int[readVarInt(input)];
+        int previous = 0;
+        for (int i = 0; i < indices.length; i++) {
+            previous += readVarInt(input);
+            if (previous >= nodeCount) {
+                throw new IndexOutOfBoundsException("Node index " + previous + " out of " + nodeCount);
+            }
+            indices[i] = previous;
+        }
+        return indices;
+    }
+
+    private static int[][] toSortedArrays(List<List<Integer>> lists) {
+        int[][] arrays = new int[lists.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = lists.get(i).stream().mapToInt(Integer::intValue).toArray();
+            Arrays.sort(arrays[i]);
+        }
+        return arrays;
+    }
+
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            output.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable length integer is too long");
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
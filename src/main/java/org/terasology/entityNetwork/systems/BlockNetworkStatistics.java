@@ -0,0 +1,185 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import org.terasology.engine.monitoring.PerformanceMonitor;
+
+import java.util.Locale;
+
+/**
+ * Counts how often the expensive operations of a {@link BlockNetwork} happen and how long they take, so that a network
+ * that slows the game down can be found with the entityNetworkDiagnostics command.  Each operation is also reported to
+ * the {@link PerformanceMonitor} as an activity named after the operation and the network id.
+ * <p>
+ * Latencies go into a histogram with a bucket per power of two nanoseconds, which is precise enough to tell a fast
+ * operation from a slow one without keeping every timing.
+ * <p>
+ * The statistics belong to one thread, the one that created them until another one takes them over.  Operations on any
+ * other thread are not counted and not reported to the {@link PerformanceMonitor}, whose activities are per thread, so
+ * that nothing needs to be synchronized.
+ */
+final class BlockNetworkStatistics {
+    private static final int BUCKETS = 64;
+    private static final int RECENT_OPERATIONS = 16;
+
+    enum Operation {
+        ADD("add"),
+        REMOVE("remove"),
+        MERGE("merge"),
+        SPLIT("split"),
+        PATH("path"),
+        DISPATCH("dispatch"),
+        REBUILD("rebuild");
+
+        private final String displayName;
+
+        Operation(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    private final String[] activityNames = new String[Operation.values().length];
+    private final long[] counts = new long[Operation.values().length];
+    // how many nodes the operations were about, e.g. the nodes added in a batch
+    private final long[] items = new long[Operation.values().length];
+    private final long[] totalNanos = new long[Operation.values().length];
+    private final long[] maxNanos = new long[Operation.values().length];
+    private final long[][] histograms = new long[Operation.values().length][BUCKETS];
+
+    // the last few operations, oldest first once the buffer wrapped around
+    private final Operation[] recentOperations = new Operation[RECENT_OPERATIONS];
+    private final long[] recentNanos = new long[RECENT_OPERATIONS];
+    private final int[] recentItems = new int[RECENT_OPERATIONS];
+    private int recentCount;
+
+    private volatile Thread owner = Thread.currentThread();
+
+    BlockNetworkStatistics(String networkId) {
+        for (Operation operation : Operation.values()) {
+            activityNames[operation.ordinal()] = networkId.isEmpty()
+                    ? "EntityNetwork " + operation.displayName
+                    : "EntityNetwork " + operation.displayName + " (" + networkId + ")";
+        }
+    }
+
+    /**
+     * Starts timing an operation, every call has to be followed by a call to {@link #end}.
+     *
+     * @return the time the operation started
+     */
+    long start(Operation operation) {
+        if (isOwner()) {
+            PerformanceMonitor.startActivity(activityNames[operation.ordinal()]);
+        }
+        return System.nanoTime();
+    }
+
+    void end(Operation operation, long startTime, int itemCount) {
+        if (isOwner()) {
+            long nanos = System.nanoTime() - startTime;
+            PerformanceMonitor.endActivity();
+            record(operation, nanos, itemCount);
+        }
+    }
+
+    /**
+     * Counts an operation that was timed elsewhere, e.g. a job that ran on another thread.  It does not show up in the
+     * {@link PerformanceMonitor}.
+     */
+    void record(Operation operation, long nanos, int itemCount) {
+        if (!isOwner()) {
+            return;
+        }
+        int index = operation.ordinal();
+        counts[index]++;
+        items[index] += itemCount;
+        totalNanos[index] += nanos;
+        maxNanos[index] = Math.max(maxNanos[index], nanos);
+        histograms[index][bucketOf(nanos)]++;
+
+        int slot = recentCount++ % RECENT_OPERATIONS;
+        recentOperations[slot] = operation;
+        recentNanos[slot] = nanos;
+        recentItems[slot] = itemCount;
+    }
+
+    /**
+     * Hands the statistics over to the current thread, e.g. once a block network built in the background is taken over.
+     * The thread that had them must be done with them.
+     */
+    void confineToCurrentThread() {
+        owner = Thread.currentThread();
+    }
+
+    private boolean isOwner() {
+        return Thread.currentThread() == owner;
+    }
+
+    long getCount(Operation operation) {
+        return counts[operation.ordinal()];
+    }
+
+    long getItems(Operation operation) {
+        return items[operation.ordinal()];
+    }
+
+    /**
+     * @return an upper bound on the time within which the given fraction of the operations finished, in nanoseconds
+     */
+    long getPercentileNanos(Operation operation, double fraction) {
+        long[] histogram = histograms[operation.ordinal()];
+        long count = counts[operation.ordinal()];
+        if (count == 0) {
+            return 0;
+        }
+        long needed = Math.max(1, (long) Math.ceil(count * fraction));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= needed) {
+                return Math.min(bucketLimit(bucket), maxNanos[operation.ordinal()]);
+            }
+        }
+        return maxNanos[operation.ordinal()];
+    }
+
+    void appendTo(StringBuilder builder) {
+        for (Operation operation : Operation.values()) {
+            int index = operation.ordinal();
+            if (counts[index] == 0) {
+                continue;
+            }
+            builder.append(String.format(Locale.ROOT, "  %-8s %8d times %10d nodes  mean %s  p50 %s  p99 %s  max %s%n",
+                    operation.displayName, counts[index], items[index], formatNanos(totalNanos[index] / counts[index]),
+                    formatNanos(getPercentileNanos(operation, 0.5)), formatNanos(getPercentileNanos(operation, 0.99)),
+                    formatNanos(maxNanos[index])));
+        }
+        if (recentCount > 0) {
+            builder.append("  recent:");
+            int first = Math.max(0, recentCount - RECENT_OPERATIONS);
+            for (int i = first; i < recentCount; i++) {
+                int slot = i % RECENT_OPERATIONS;
+                builder.append(' ').append(recentOperations[slot].displayName).append('(').append(recentItems[slot]).append(")=")
+                        .append(formatNanos(recentNanos[slot]));
+            }
+            builder.append(System.lineSeparator());
+        }
+    }
+
+    private static int bucketOf(long nanos) {
+        return 63 - Long.numberOfLeadingZeros(Math.max(1, nanos));
+    }
+
+    private static long bucketLimit(int bucket) {
+        return bucket >= 62 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + "ns";
+        } else if (nanos < 10_000_000) {
+            return nanos / 1000 + "us";
+        }
+        return nanos / 1_000_000 + "ms";
+    }
+}
@@ -0,0 +1,47 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
+import org.terasology.entityNetwork.NetworkNode;
+
+import java.util.Collection;
+
+/**
+ * A network with every run of nodes that have exactly two connections collapsed into one {@link NetworkChain}, as worked
+ * out by {@link EntityNetworkManager#computeCompressedNetwork}.  What is left are the vertices, the nodes that are leaves or
+ * do not have two connections, which are usually a few junctions, tanks and machines even in networks of thousands of
+ * pipes, so paths, flows and distances can be worked out on them instead of on every node.
+ */
+public final class CompressedNetwork {
+    private final ImmutableList<NetworkNode> vertices;
+    private final ImmutableList<NetworkChain> chains;
+    private final ImmutableSetMultimap<NetworkNode, NetworkChain> vertexChains;
+
+    CompressedNetwork(Collection<NetworkNode> vertices, Collection<NetworkChain> chains) {
+        this.vertices = ImmutableList.copyOf(vertices);
+        this.chains = ImmutableList.copyOf(chains);
+        ImmutableSetMultimap.Builder<NetworkNode, NetworkChain> builder = ImmutableSetMultimap.builder();
+        for (NetworkChain chain : chains) {
+            builder.put(chain.getStart(), chain);
+            builder.put(chain.getEnd(), chain);
+        }
+        this.vertexChains = builder.build();
+    }
+
+    public Collection<NetworkNode> getVertices() {
+        return vertices;
+    }
+
+    public Collection<NetworkChain> getChains() {
+        return chains;
+    }
+
+    /**
+     * @return the chains that start or end at the vertex
+     */
+    public Collection<NetworkChain> getChains(NetworkNode vertex) {
+        return vertexChains.get(vertex);
+    }
+}
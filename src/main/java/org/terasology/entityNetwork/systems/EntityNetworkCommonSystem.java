@@ -3,62 +3,265 @@
 package org.terasology.entityNetwork.systems;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeRemoveComponent;
 import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnAddedComponent;
 import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
 import org.terasology.engine.entitySystem.prefab.Prefab;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
 import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.registry.Share;
+import org.terasology.engine.world.WorldComponent;
+import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.engine.world.chunks.Chunks;
+import org.terasology.engine.world.chunks.event.OnChunkLoaded;
 import org.terasology.entityNetwork.Network;
 import org.terasology.entityNetwork.NetworkNode;
 import org.terasology.entityNetwork.NetworkNodeBuilder;
 import org.terasology.entityNetwork.components.EntityNetworkComponent;
+import org.terasology.entityNetwork.components.EntityNetworkSnapshotComponent;
+import org.terasology.entityNetwork.systems.BlockNetworkStatistics.Operation;
 import org.terasology.gestalt.assets.management.AssetManager;
+import org.terasology.gestalt.entitysystem.component.Component;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
 
 @RegisterSystem
 @Share(EntityNetworkManager.class)
 public class EntityNetworkCommonSystem extends BaseComponentSystem implements UpdateSubscriberSystem, EntityNetworkManager {
+    private static final Logger logger = LoggerFactory.getLogger(EntityNetworkCommonSystem.class);
+    // pending builders are tried for this many entities per update, so a big world edit is spread over several updates
+    private static final int MAX_PENDING_ENTITIES_PER_UPDATE = 256;
+    // the most updates between two attempts at building the nodes of an entity that nothing has woken up
+    private static final int MAX_PENDING_RETRY_DELAY = 64;
+    // a rebuild leaves a core to the game, so that it keeps running smoothly while the networks are worked out
+    private static final int REBUILD_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
 
     Map<String, BlockNetwork> blockNetworks = Maps.newHashMap();
     Multimap<EntityRef, NetworkNodeBuilder> pendingEntitiesToBeAdded = HashMultimap.create();
     Multimap<NetworkNode, EntityRef> entityLookup = HashMultimap.create();
     Multimap<EntityRef, NetworkNode> nodeLookup = HashMultimap.create();
+    // the block network each network belongs to, kept up to date by listening to the block networks
+    Map<Network, BlockNetwork> networkOwners = Maps.newHashMap();
+    // the components tracked per network id, these stay when the networks are reset
+    SetMultimap<String, Class<? extends Component>> trackedComponents = HashMultimap.create();
+    Map<BlockNetwork, TrackedComponentIndex> trackedComponentIndices = Maps.newHashMap();
+    // builders create a new node every time, equal nodes share one instance so most lookups are identity checks
+    private final Interner<NetworkNode> nodeInterner = Interners.newWeakInterner();
+    // while something iterates over the networks, queued changes have to wait so that the networks do not change under it
+    private int iterationDepth;
+    // entities to check again for tracked components
+    private Set<EntityRef> queuedRefreshes = Sets.newLinkedHashSet();
+    // entities with pending builders to try again on the next update, e.g. because they just got their block
+    private Set<EntityRef> wokenEntities = Sets.newLinkedHashSet();
+    // builders that keep failing are tried again after a delay that doubles with every failed attempt
+    private Map<EntityRef, Integer> failedAttempts = Maps.newHashMap();
+    private SortedMap<Long, Set<EntityRef>> scheduledRetries = Maps.newTreeMap();
+    // the update each entity in scheduledRetries is due at, an entity has at most one retry scheduled
+    private Map<EntityRef, Long> retryUpdates = Maps.newHashMap();
+    private long updateCount;
+    // a rebuild of all networks running in the background, and the entities that changed since it read them
+    private NetworkRebuild rebuild;
+    // the threads rebuilds run on, created with the first rebuild
+    private ForkJoinPool rebuildPool;
+    private Set<EntityRef> entitiesChangedDuringRebuild = Sets.newLinkedHashSet();
+    // nodes of entities that were unloaded, e.g. along with their chunk.  They stay in the networks without an entity until
+    // the entity is loaded again, so that unloading and loading a chunk does not split and merge the networks every time
+    private Map<NetworkNode, EntityRef> dormantNodes = Maps.newHashMap();
+    private Multimap<EntityRef, NetworkNode> dormantEntityNodes = HashMultimap.create();
+    // nodes restored from the saved networks that no entity has claimed yet, they are dormant nodes without an entity
+    private Set<NetworkNode> restoredNodes = Sets.newHashSet();
+    // restored nodes in chunks that were loaded since the last update, they are removed unless an entity claims them
+    private Set<NetworkNode> restoredNodesToCheck = Sets.newLinkedHashSet();
+    // subscriptions to the changes of the networks per network id, these stay when the networks are reset
+    private SetMultimap<String, NetworkTopologySubscription> topologySubscriptions = HashMultimap.create();
+    // the published graphs per network id, these stay when the networks are reset
+    private Map<String, NetworkGraphs> publishedGraphs = Maps.newHashMap();
 
     @In
     AssetManager assetManager;
     @In
     EntityManager entityManager;
+    @In
+    WorldProvider worldProvider;
+
+    @Override
+    public void postBegin() {
+        EntityNetworkSnapshotComponent snapshotComponent = worldProvider.getWorldEntity().getComponent(EntityNetworkSnapshotComponent.class);
+        if (snapshotComponent != null) {
+            for (Map.Entry<String, byte[]> snapshot : snapshotComponent.snapshots.entrySet()) {
+                BlockNetworkSnapshot blockNetworkSnapshot = BlockNetworkSnapshot.read(snapshot.getKey(), snapshot.getValue());
+                if (blockNetworkSnapshot != null) {
+                    BlockNetwork blockNetwork = blockNetworks.get(snapshot.getKey());
+                    if (blockNetwork == null) {
+                        blockNetwork = createBlockNetwork(snapshot.getKey());
+                    }
+                    // the whole topology is there from the start, the entities claim their nodes as their chunks load
+                    for (NetworkNode node : blockNetwork.restoreSnapshot(blockNetworkSnapshot)) {
+                        if (!entityLookup.containsKey(node)) {
+                            restoredNodes.add(nodeInterner.intern(node));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (rebuildPool != null) {
+            rebuildPool.shutdownNow();
+            rebuildPool = null;
+        }
+        rebuild = null;
+    }
 
+    @Override
+    public void preSave() {
+        EntityNetworkSnapshotComponent snapshotComponent = new EntityNetworkSnapshotComponent();
+        for (Map.Entry<String, BlockNetwork> blockNetwork : blockNetworks.entrySet()) {
+            applyQueuedChanges(blockNetwork.getValue());
+            byte[] snapshot = BlockNetworkSnapshot.write(blockNetwork.getValue());
+            if (snapshot != null) {
+                snapshotComponent.snapshots.put(blockNetwork.getKey(), snapshot);
+            }
+        }
+        worldProvider.getWorldEntity().addOrSaveComponent(snapshotComponent);
+    }
+
+    /**
+     * Entities are deactivated both when they are unloaded and when they are destroyed, their nodes stay in the networks
+     * until it is known which one it is.
+     */
     @ReceiveEvent
-    public void onRemovedEntityNetwork(BeforeDeactivateComponent event, EntityRef entityRef, EntityNetworkComponent entityNetworkComponent) {
+    public void onDeactivateEntityNetwork(BeforeDeactivateComponent event, EntityRef entityRef, EntityNetworkComponent entityNetworkComponent) {
+        deactivateEntityNodes(entityRef);
+    }
+
+    @ReceiveEvent
+    public void onRemovedEntityNetwork(BeforeRemoveComponent event, EntityRef entityRef, EntityNetworkComponent entityNetworkComponent) {
         removeEntityFromNetworks(entityRef);
     }
 
+    private void deactivateEntityNodes(EntityRef entityRef) {
+        if (rebuild != null) {
+            entitiesChangedDuringRebuild.add(entityRef);
+        }
+        for (NetworkNode node : nodeLookup.removeAll(entityRef)) {
+            if (entityLookup.get(node).size() == 1) {
+                BlockNetwork blockNetwork = blockNetworks.get(node.getNetworkId());
+                trackedComponentIndices.get(blockNetwork).nodeUnassigned(node);
+                blockNetwork.membershipChanged(node);
+                dormantNodes.put(node, entityRef);
+                dormantEntityNodes.put(entityRef, node);
+            }
+            entityLookup.remove(node, entityRef);
+        }
+        clearPendingBuilders(entityRef);
+    }
+
+    /**
+     * The entities of a chunk are loaded along with it, the restored nodes in it that no entity claimed by the next update
+     * are gone, e.g. because the snapshot is older than the chunk.
+     */
+    @ReceiveEvent(components = WorldComponent.class)
+    public void onChunkLoaded(OnChunkLoaded event, EntityRef worldEntity) {
+        if (restoredNodes.isEmpty()) {
+            return;
+        }
+        int minX = event.getChunkPos().x() * Chunks.SIZE_X;
+        int minY = event.getChunkPos().y() * Chunks.SIZE_Y;
+        int minZ = event.getChunkPos().z() * Chunks.SIZE_Z;
+        BlockRegion chunkRegion = new BlockRegion(minX, minY, minZ, minX + Chunks.SIZE_X - 1, minY + Chunks.SIZE_Y - 1, minZ + Chunks.SIZE_Z - 1);
+        for (BlockNetwork blockNetwork : blockNetworks.values()) {
+            for (NetworkNode node : blockNetwork.getNodesInRegion(chunkRegion)) {
+                if (restoredNodes.contains(node)) {
+                    restoredNodesToCheck.add(node);
+                }
+            }
+        }
+    }
+
+    private void removeUnclaimedRestoredNodes() {
+        for (NetworkNode node : restoredNodesToCheck) {
+            if (restoredNodes.remove(node)) {
+                blockNetworks.get(node.getNetworkId()).queueRemoveNetworkingBlock(node);
+            }
+        }
+        restoredNodesToCheck.clear();
+    }
+
+    /**
+     * Removes the dormant nodes the entity left behind, once it was destroyed or was loaded again without them.
+     */
+    private void removeDormantNodes(EntityRef entityRef) {
+        for (NetworkNode node : dormantEntityNodes.removeAll(entityRef)) {
+            dormantNodes.remove(node);
+            blockNetworks.get(node.getNetworkId()).queueRemoveNetworkingBlock(node);
+        }
+    }
+
     private void removeEntityFromNetworks(EntityRef entityRef) {
+        if (rebuild != null) {
+            entitiesChangedDuringRebuild.add(entityRef);
+        }
         for (NetworkNode node : Lists.newArrayList(nodeLookup.get(entityRef))) {
             remove(entityRef, node);
         }
+        clearPendingBuilders(entityRef);
+        removeDormantNodes(entityRef);
     }
 
     private void addEntityToNetworks(EntityRef entityRef) {
+        if (rebuild != null) {
+            entitiesChangedDuringRebuild.add(entityRef);
+        }
+        Prefab entityPrefab = getNetworkPrefab(entityRef);
+        if (entityPrefab != null) {
+            addToNetworkViaBuilders(entityRef, entityPrefab);
+        }
+        if (!pendingEntitiesToBeAdded.containsKey(entityRef)) {
+            removeDormantNodes(entityRef);
+        }
+    }
+
+    private Prefab getNetworkPrefab(EntityRef entityRef) {
         Prefab entityPrefab = entityRef.getParentPrefab();
 
         // Treat block entities differently as they do not follow normal entity creation with an expected parentPrefab
@@ -66,10 +269,7 @@ public class EntityNetworkCommonSystem extends BaseComponentSystem implements Up
         if (blockComponent != null) {
             entityPrefab = blockComponent.getBlock().getPrefab().get();
         }
-
-        if (entityPrefab != null) {
-            addToNetworkViaBuilders(entityRef, entityPrefab);
-        }
+        return entityPrefab;
     }
 
     private void remove(EntityRef entityRef, NetworkNode node) {
@@ -77,29 +277,77 @@ public class EntityNetworkCommonSystem extends BaseComponentSystem implements Up
 
         if (entityLookup.get(node).size() == 1) {
             BlockNetwork blocknetwork = blockNetworks.get(node.getNetworkId());
-            blocknetwork.removeNetworkingBlock(node);
+            trackedComponentIndices.get(blocknetwork).nodeUnassigned(node);
+            blocknetwork.queueRemoveNetworkingBlock(node);
         }
 
         entityLookup.remove(node, entityRef);
     }
 
-    private void add(EntityRef entityRef, NetworkNode node) {
-        if (!entityLookup.containsKey(node)) {
+    private void add(EntityRef entityRef, NetworkNode builtNode) {
+        NetworkNode node = nodeInterner.intern(builtNode);
+        EntityRef previousEntity = dormantNodes.remove(node);
+        if (previousEntity != null || restoredNodes.remove(node)) {
+            // the node never left the networks, it only needs its entity back
+            if (previousEntity != null) {
+                dormantEntityNodes.remove(previousEntity, node);
+            }
+            entityLookup.put(node, entityRef);
+            BlockNetwork blockNetwork = blockNetworks.get(node.getNetworkId());
+            trackedComponentIndices.get(blockNetwork).nodeAssigned(node, entityRef);
+            blockNetwork.membershipChanged(node);
+            nodeLookup.put(entityRef, node);
+        } else if (!entityLookup.containsKey(node)) {
             entityLookup.put(node, entityRef);
 
             // add to the actual network
             String networkId = node.getNetworkId();
             BlockNetwork blockNetwork = blockNetworks.get(networkId);
             if (blockNetwork == null) {
-                blockNetwork = new BlockNetwork();
-                blockNetworks.put(networkId, blockNetwork);
+                blockNetwork = createBlockNetwork(networkId);
             }
-            blockNetwork.addNetworkingBlock(node);
+            trackedComponentIndices.get(blockNetwork).nodeAssigned(node, entityRef);
+            // an equal node can still be in the networks, waiting to be removed
+            blockNetwork.membershipChanged(node);
+            // the network is updated with everything else that changed this frame, e.g. a whole chunk being loaded
+            blockNetwork.queueAddNetworkingBlock(node);
 
             nodeLookup.put(entityRef, node);
         }
     }
 
+    private BlockNetwork createBlockNetwork(String networkId) {
+        BlockNetwork blockNetwork = new BlockNetwork(networkId);
+        registerBlockNetwork(networkId, blockNetwork);
+        return blockNetwork;
+    }
+
+    private void registerBlockNetwork(String networkId, BlockNetwork blockNetwork) {
+        // a block network built in the background is only used on this thread from now on
+        blockNetwork.getStatistics().confineToCurrentThread();
+        blockNetwork.addTopologyListener(new NetworkOwnerTracker(blockNetwork));
+        TrackedComponentIndex componentIndex = new TrackedComponentIndex(blockNetwork, trackedComponents.get(networkId),
+                node -> Iterables.getFirst(entityLookup.get(node), null));
+        blockNetwork.addTopologyListener(componentIndex);
+        trackedComponentIndices.put(blockNetwork, componentIndex);
+        blockNetworks.put(networkId, blockNetwork);
+
+        // a block network built elsewhere already has networks that nobody heard about
+        for (Network network : blockNetwork.getNetworks()) {
+            networkOwners.put(network, blockNetwork);
+        }
+        for (Class<? extends Component> componentClass : trackedComponents.get(networkId)) {
+            componentIndex.startTracking(componentClass);
+        }
+        if (topologySubscriptions.containsKey(networkId)) {
+            blockNetwork.addDeferredTopologyListener(new SubscriptionDispatcher(networkId, blockNetwork));
+            NetworkTopologyDelta existingNetworks = NetworkTopologyDelta.ofAllNetworks(blockNetwork, true);
+            for (NetworkTopologySubscription subscription : topologySubscriptions.get(networkId)) {
+                subscription.offer(existingNetworks);
+            }
+        }
+    }
+
     /**
      * Treat block entities differently as they do not follow normal entity creation with an expected parentPrefab
      */
@@ -113,6 +361,16 @@ public class EntityNetworkCommonSystem extends BaseComponentSystem implements Up
         addEntityToNetworks(entityRef);
     }
 
+    @ReceiveEvent(components = {EntityNetworkComponent.class})
+    public void onBlockAdded(OnAddedComponent event, EntityRef entityRef, BlockComponent blockComponent) {
+        wakePendingBuilders(entityRef);
+    }
+
+    @ReceiveEvent(components = {EntityNetworkComponent.class})
+    public void onBlockChanged(OnChangedComponent event, EntityRef entityRef, BlockComponent blockComponent) {
+        wakePendingBuilders(entityRef);
+    }
+
     @ReceiveEvent
     public void onChangedEntityNetwork(OnChangedComponent event, EntityRef entityRef, EntityNetworkComponent entityNetworkComponent) {
         removeEntityFromNetworks(entityRef);
@@ -130,47 +388,340 @@ public class EntityNetworkCommonSystem extends BaseComponentSystem implements Up
                 pendingEntitiesToBeAdded.put(entityRef, builder);
             }
         }
+        if (pendingEntitiesToBeAdded.containsKey(entityRef)) {
+            scheduleRetry(entityRef);
+        }
     }
 
-    @Override
-    public void update(float delta) {
-        for (Map.Entry<EntityRef, Collection<NetworkNodeBuilder>> entry : pendingEntitiesToBeAdded.asMap().entrySet()) {
-            if (!entry.getKey().exists() || !entry.getKey().hasComponent(EntityNetworkComponent.class)) {
-                pendingEntitiesToBeAdded.removeAll(entry);
+    /**
+     * Tries the pending builders of the entity on the next update, as whatever they were waiting for might be there now.
+     */
+    private void wakePendingBuilders(EntityRef entityRef) {
+        if (pendingEntitiesToBeAdded.containsKey(entityRef)) {
+            // the entity is tried on the next update instead of when its retry is due
+            cancelRetry(entityRef);
+            wokenEntities.add(entityRef);
+            failedAttempts.remove(entityRef);
+        }
+    }
+
+    private void scheduleRetry(EntityRef entityRef) {
+        cancelRetry(entityRef);
+        int attempts = failedAttempts.merge(entityRef, 1, Integer::sum);
+        long delay = Math.min(1L << Math.min(attempts - 1, 30), MAX_PENDING_RETRY_DELAY);
+        long retryUpdate = updateCount + delay;
+        scheduledRetries.computeIfAbsent(retryUpdate, k -> Sets.newLinkedHashSet()).add(entityRef);
+        retryUpdates.put(entityRef, retryUpdate);
+    }
+
+    private void cancelRetry(EntityRef entityRef) {
+        Long retryUpdate = retryUpdates.remove(entityRef);
+        if (retryUpdate != null) {
+            Set<EntityRef> entities = scheduledRetries.get(retryUpdate);
+            entities.remove(entityRef);
+            if (entities.isEmpty()) {
+                scheduledRetries.remove(retryUpdate);
+            }
+        }
+    }
+
+    private void clearPendingBuilders(EntityRef entityRef) {
+        pendingEntitiesToBeAdded.removeAll(entityRef);
+        wokenEntities.remove(entityRef);
+        failedAttempts.remove(entityRef);
+        cancelRetry(entityRef);
+    }
+
+    private void resolvePendingBuilders() {
+        SortedMap<Long, Set<EntityRef>> dueRetries = scheduledRetries.headMap(updateCount + 1);
+        for (Set<EntityRef> entities : dueRetries.values()) {
+            wokenEntities.addAll(entities);
+            retryUpdates.keySet().removeAll(entities);
+        }
+        dueRetries.clear();
+
+        // only entities whose builders are actually tried count towards the limit
+        int triedEntities = 0;
+        Iterator<EntityRef> entityIterator = wokenEntities.iterator();
+        while (triedEntities < MAX_PENDING_ENTITIES_PER_UPDATE && entityIterator.hasNext()) {
+            EntityRef entityRef = entityIterator.next();
+            entityIterator.remove();
+            if (!pendingEntitiesToBeAdded.containsKey(entityRef)) {
                 continue;
             }
+            if (!entityRef.exists() || !entityRef.hasComponent(EntityNetworkComponent.class)) {
+                clearPendingBuilders(entityRef);
+                continue;
+            }
+            triedEntities++;
 
-            for (NetworkNodeBuilder builder : Lists.newArrayList(entry.getValue())) {
-                NetworkNode newNetworkNode = builder.build(entry.getKey());
+            for (NetworkNodeBuilder builder : Lists.newArrayList(pendingEntitiesToBeAdded.get(entityRef))) {
+                NetworkNode newNetworkNode = builder.build(entityRef);
                 if (newNetworkNode != null) {
                     // we could already determine the type of network node, add it to the network
-                    pendingEntitiesToBeAdded.remove(entry.getKey(), builder);
-                    add(entry.getKey(), newNetworkNode);
-                } else {
-                    // keep this builder around for next time
+                    pendingEntitiesToBeAdded.remove(entityRef, builder);
+                    add(entityRef, newNetworkNode);
+                }
+            }
+            if (pendingEntitiesToBeAdded.containsKey(entityRef)) {
+                scheduleRetry(entityRef);
+            } else {
+                failedAttempts.remove(entityRef);
+                removeDormantNodes(entityRef);
+            }
+        }
+    }
+
+    /**
+     * Brings the networks up to date with all the nodes added and removed since the last time.
+     */
+    private void applyQueuedChanges() {
+        for (BlockNetwork blockNetwork : blockNetworks.values()) {
+            applyQueuedChanges(blockNetwork);
+        }
+    }
+
+    private void applyQueuedChanges(BlockNetwork blockNetwork) {
+        if (iterationDepth == 0) {
+            blockNetwork.applyQueuedChanges();
+        }
+    }
+
+    /**
+     * @return the up to date block network the network belongs to, or null if the network is gone
+     */
+    private BlockNetwork getBlockNetwork(Network network) {
+        applyQueuedChanges();
+        return networkOwners.get(network);
+    }
+
+    private <T> void iterate(Iterable<T> items, Consumer<T> consumer) {
+        iterationDepth++;
+        try {
+            for (T item : items) {
+                consumer.accept(item);
+            }
+        } finally {
+            iterationDepth--;
+        }
+    }
+
+    private void applyQueuedRefreshes() {
+        if (iterationDepth > 0 || queuedRefreshes.isEmpty()) {
+            // the tracked entities might be what is being iterated over
+            return;
+        }
+
+        List<EntityRef> entities = Lists.newArrayList(queuedRefreshes);
+        queuedRefreshes.clear();
+        for (EntityRef entity : entities) {
+            Collection<NetworkNode> entityNodes = nodeLookup.get(entity);
+            for (String networkId : Sets.newHashSet(Iterables.transform(entityNodes, NetworkNode::getNetworkId))) {
+                BlockNetwork blockNetwork = blockNetworks.get(networkId);
+                applyQueuedChanges(blockNetwork);
+                trackedComponentIndices.get(blockNetwork).refresh(entity, entityNodes);
+                for (NetworkNode node : entityNodes) {
+                    if (node.getNetworkId().equals(networkId)) {
+                        blockNetwork.membershipChanged(node);
+                    }
                 }
             }
         }
     }
 
     @Override
-    public Collection<NetworkNode> getNetworkNodes(Network network) {
+    public void update(float delta) {
+        if (rebuild != null && rebuild.isDone()) {
+            finishRebuild();
+        }
+        updateCount++;
+        resolvePendingBuilders();
+        removeUnclaimedRestoredNodes();
+
+        applyQueuedChanges();
+        applyQueuedRefreshes();
         for (BlockNetwork blockNetwork : blockNetworks.values()) {
-            if (blockNetwork.getNetworks().contains(network)) {
-                return Collections.unmodifiableCollection(new ArrayList<>(blockNetwork.getNetworkNodes(network)));
+            blockNetwork.dispatchDeferredChanges();
+        }
+        for (Map.Entry<String, NetworkGraphs> graphs : publishedGraphs.entrySet()) {
+            publishGraphs(graphs.getKey(), graphs.getValue());
+        }
+    }
+
+    /**
+     * Makes new graphs of the networks that changed since they were last published, and reuses the others.
+     */
+    private void publishGraphs(String networkId, NetworkGraphs graphs) {
+        BlockNetwork blockNetwork = blockNetworks.get(networkId);
+        Collection<Network> networks = blockNetwork != null ? blockNetwork.getNetworks() : Collections.emptySet();
+        Map<Network, NetworkGraph> previousGraphs = graphs.getGraphs();
+        boolean changed = previousGraphs.size() != networks.size();
+        ImmutableMap.Builder<Network, NetworkGraph> currentGraphs = ImmutableMap.builderWithExpectedSize(networks.size());
+        for (Network network : networks) {
+            NetworkGraph graph = previousGraphs.get(network);
+            if (graph == null || graph.getMembershipVersion() != blockNetwork.getMembershipVersion(network)) {
+                graph = NetworkGraph.of(blockNetwork, network, this::getEntityForNode);
+                changed = true;
             }
+            currentGraphs.put(network, graph);
+        }
+        if (changed) {
+            graphs.publish(currentGraphs.build());
+        }
+    }
+
+    @Override
+    public Collection<NetworkNode> getNetworkNodes(Network network) {
+        BlockNetwork blockNetwork = getBlockNetwork(network);
+        if (blockNetwork != null) {
+            return Collections.unmodifiableCollection(new ArrayList<>(blockNetwork.getNetworkNodes(network)));
         }
         return Collections.EMPTY_LIST;
     }
 
+    @Override
+    public long getTopologyVersion(Network network) {
+        BlockNetwork blockNetwork = getBlockNetwork(network);
+        return blockNetwork != null ? blockNetwork.getTopologyVersion(network) : -1;
+    }
+
+    @Override
+    public long getMembershipVersion(Network network) {
+        applyQueuedRefreshes();
+        BlockNetwork blockNetwork = getBlockNetwork(network);
+        return blockNetwork != null ? blockNetwork.getMembershipVersion(network) : -1;
+    }
+
+    @Override
+    public NetworkDistanceField computeDistanceField(Network network, Predicate<NetworkNode> sources) {
+        BlockNetwork blockNetwork = getBlockNetwork(network);
+        if (blockNetwork != null) {
+            return blockNetwork.computeDistanceField(network, sources);
+        }
+        return new NetworkDistanceField(0);
+    }
+
+    @Override
+    public CompressedNetwork computeCompressedNetwork(Network network, ToDoubleFunction<NetworkNode> capacities) {
+        BlockNetwork blockNetwork = getBlockNetwork(network);
+        if (blockNetwork != null) {
+            return blockNetwork.computeCompressedNetwork(network, capacities);
+        }
+        return new CompressedNetwork(Collections.emptyList(), Collections.emptyList());
+    }
+
+    @Override
+    public void trackComponent(String networkId, Class<? extends Component> componentClass) {
+        BlockNetwork blockNetwork = blockNetworks.get(networkId);
+        if (blockNetwork != null) {
+            // queued nodes are counted when they are added, they must not be counted again when picking up the existing ones
+            applyQueuedChanges(blockNetwork);
+        }
+        if (trackedComponents.put(networkId, componentClass) && blockNetwork != null) {
+            trackedComponentIndices.get(blockNetwork).startTracking(componentClass);
+        }
+    }
+
+    @Override
+    public Collection<EntityRef> getTrackedEntities(Network network, Class<? extends Component> componentClass) {
+        applyQueuedRefreshes();
+        BlockNetwork blockNetwork = getBlockNetwork(network);
+        if (blockNetwork != null) {
+            return trackedComponentIndices.get(blockNetwork).getEntities(network, componentClass);
+        }
+        return Collections.emptySet();
+    }
+
+    @Override
+    public void forEachTrackedEntity(Network network, Class<? extends Component> componentClass, Consumer<EntityRef> consumer) {
+        iterate(getTrackedEntities(network, componentClass), consumer);
+    }
+
+    @Override
+    public void refreshTrackedComponents(EntityRef entity) {
+        // the entity is checked once it is next needed, by then a component about to be removed is gone
+        queuedRefreshes.add(entity);
+    }
+
+    @Override
+    public NetworkTopologySubscription subscribeToTopologyChanges(String networkId) {
+        NetworkTopologySubscription subscription = new NetworkTopologySubscription();
+        BlockNetwork blockNetwork = blockNetworks.get(networkId);
+        if (blockNetwork != null) {
+            applyQueuedChanges(blockNetwork);
+            if (topologySubscriptions.containsKey(networkId)) {
+                // the other subscriptions get the changes so far, the new one starts with the networks as they are now
+                blockNetwork.dispatchDeferredChanges();
+            } else {
+                blockNetwork.addDeferredTopologyListener(new SubscriptionDispatcher(networkId, blockNetwork));
+            }
+            subscription.offer(NetworkTopologyDelta.ofAllNetworks(blockNetwork, true));
+        }
+        topologySubscriptions.put(networkId, subscription);
+        return subscription;
+    }
+
+    @Override
+    public NetworkGraphs publishNetworkGraphs(String networkId) {
+        NetworkGraphs graphs = publishedGraphs.get(networkId);
+        if (graphs == null) {
+            graphs = new NetworkGraphs();
+            publishedGraphs.put(networkId, graphs);
+            BlockNetwork blockNetwork = blockNetworks.get(networkId);
+            if (blockNetwork != null) {
+                applyQueuedChanges(blockNetwork);
+            }
+            applyQueuedRefreshes();
+            publishGraphs(networkId, graphs);
+        }
+        return graphs;
+    }
+
     @Override
     public Collection<Network> getNetworks(String networkId) {
         if (blockNetworks.containsKey(networkId)) {
+            applyQueuedChanges(blockNetworks.get(networkId));
             return Collections.unmodifiableCollection(new ArrayList<>(blockNetworks.get(networkId).getNetworks()));
         }
         return Collections.EMPTY_LIST;
     }
 
+    @Override
+    public Collection<NetworkNode> getNodesInRegion(BlockRegion region) {
+        List<NetworkNode> nodes = Lists.newArrayList();
+        for (BlockNetwork blockNetwork : blockNetworks.values()) {
+            applyQueuedChanges(blockNetwork);
+            nodes.addAll(blockNetwork.getNodesInRegion(region));
+        }
+        return Collections.unmodifiableList(nodes);
+    }
+
+    @Override
+    public void forEachNode(Network network, Consumer<NetworkNode> consumer) {
+        BlockNetwork blockNetwork = getBlockNetwork(network);
+        if (blockNetwork != null) {
+            iterate(blockNetwork.getNetworkNodes(network), consumer);
+        }
+    }
+
+    @Override
+    public void forEachNetwork(String networkId, Consumer<Network> consumer) {
+        BlockNetwork blockNetwork = blockNetworks.get(networkId);
+        if (blockNetwork != null) {
+            applyQueuedChanges(blockNetwork);
+            iterate(blockNetwork.getNetworks(), consumer);
+        }
+    }
+
+    @Override
+    public void forEachNetwork(NetworkNode node, Consumer<Network> consumer) {
+        BlockNetwork blockNetwork = blockNetworks.get(node.getNetworkId());
+        if (blockNetwork != null) {
+            applyQueuedChanges(blockNetwork);
+            iterate(blockNetwork.getNetworks(node), consumer);
+        }
+    }
+
     @Override
     public EntityRef getEntityForNode(NetworkNode node) {
         Optional<EntityRef> entity = entityLookup.get(node).stream().findFirst();
@@ -181,6 +732,11 @@ public class EntityNetworkCommonSystem extends BaseComponentSystem implements Up
         }
     }
 
+    @Override
+    public boolean isDormant(NetworkNode node) {
+        return dormantNodes.containsKey(node) || restoredNodes.contains(node);
+    }
+
     @Override
     public Collection<NetworkNode> getNodesForEntity(EntityRef entity) {
         return Collections.unmodifiableCollection(new ArrayList<>(nodeLookup.get(entity)));
@@ -189,23 +745,265 @@ public class EntityNetworkCommonSystem extends BaseComponentSystem implements Up
     @Override
     public Collection<Network> getNetworks(NetworkNode node) {
         BlockNetwork blockNetwork = blockNetworks.get(node.getNetworkId());
+        applyQueuedChanges(blockNetwork);
         return Collections.unmodifiableCollection(new ArrayList<>(blockNetwork.getNetworks(node)));
     }
 
-    @Command(shortDescription = "Resets the entity network and reconnects everything", runOnServer = true)
-    public String entityNetworkResetAllNetworks() {
+    @Command(shortDescription = "Resets the entity network and reconnects everything",
+            helpText = "With parallel set to true the networks are rebuilt in the background and swapped in once they are done",
+            runOnServer = true)
+    public String entityNetworkResetAllNetworks(@CommandParam(value = "parallel", required = false) Boolean parallel) {
+        if (Boolean.TRUE.equals(parallel)) {
+            startRebuild();
+            return "Rebuilding networks in the background";
+        }
         resetAllNetworks();
         return "Networks Reset";
     }
 
+    @Command(shortDescription = "Shows the size of the entity networks and how long changing them takes",
+            helpText = "Lists every network id, or only the given one, with its node and network counts, the size of its "
+                    + "largest network and the timings of its operations since the networks were last reset",
+            runOnServer = true)
+    public String entityNetworkDiagnostics(@CommandParam(value = "networkId", required = false) String networkId) {
+        StringBuilder result = new StringBuilder();
+        for (String id : Sets.newTreeSet(blockNetworks.keySet())) {
+            if (networkId != null && !networkId.equals(id)) {
+                continue;
+            }
+            BlockNetwork blockNetwork = blockNetworks.get(id);
+            applyQueuedChanges(blockNetwork);
+            int largestNetworkSize = 0;
+            for (Network network : blockNetwork.getNetworks()) {
+                largestNetworkSize = Math.max(largestNetworkSize, blockNetwork.getNetworkNodes(network).size());
+            }
+            long dormantNodeCount = Iterables.size(Iterables.filter(Iterables.concat(dormantNodes.keySet(), restoredNodes),
+                    node -> node.getNetworkId().equals(id)));
+            result.append(String.format(Locale.ROOT, "%s: %d nodes (%d dormant), %d networks, largest network %d nodes%n",
+                    id, blockNetwork.getNetworkSize(), dormantNodeCount, blockNetwork.getNetworks().size(), largestNetworkSize));
+            blockNetwork.getStatistics().appendTo(result);
+        }
+        if (result.length() == 0) {
+            return networkId != null ? "No network with id " + networkId : "No networks";
+        }
+        result.append(pendingEntitiesToBeAdded.keySet().size()).append(" entities waiting for their nodes to be built");
+        return result.toString();
+    }
+
+    /**
+     * Reads the nodes of all entities, then builds the block network of each network id on the rebuild pool, which is not
+     * shared with anything else.  The current networks stay in use until {@link #finishRebuild} swaps the new ones in.
+     */
+    private void startRebuild() {
+        NetworkRebuild newRebuild = new NetworkRebuild();
+        // entities can only be looked at on this thread, so everything the builders need is read up front
+        for (EntityRef entityRef : entityManager.getEntitiesWith(EntityNetworkComponent.class)) {
+            Prefab entityPrefab = getNetworkPrefab(entityRef);
+            if (entityPrefab == null) {
+                continue;
+            }
+            for (NetworkNodeBuilder builder : Iterables.filter(entityPrefab.iterateComponents(), NetworkNodeBuilder.class)) {
+                NetworkNode builtNode = builder.build(entityRef);
+                if (builtNode == null) {
+                    newRebuild.pendingEntitiesToBeAdded.put(entityRef, builder);
+                } else {
+                    NetworkNode node = nodeInterner.intern(builtNode);
+                    if (!newRebuild.entityLookup.containsKey(node)) {
+                        newRebuild.entityLookup.put(node, entityRef);
+                        newRebuild.nodeLookup.put(entityRef, node);
+                    }
+                }
+            }
+        }
+
+        Map<String, List<NetworkNode>> nodesByNetworkId = Maps.newHashMap();
+        for (NetworkNode node : newRebuild.entityLookup.keySet()) {
+            nodesByNetworkId.computeIfAbsent(node.getNetworkId(), k -> Lists.newArrayList()).add(node);
+        }
+        if (rebuildPool == null) {
+            rebuildPool = new ForkJoinPool(REBUILD_PARALLELISM);
+        }
+        ForkJoinPool pool = rebuildPool;
+        List<CompletableFuture<Void>> tasks = Lists.newArrayList();
+        for (Map.Entry<String, List<NetworkNode>> nodes : nodesByNetworkId.entrySet()) {
+            tasks.add(CompletableFuture.runAsync(() -> {
+                long startTime = System.nanoTime();
+                BlockNetwork blockNetwork = new BlockNetwork(nodes.getKey());
+                blockNetwork.addNetworkingBlocksInParallel(nodes.getValue(), pool);
+                newRebuild.rebuildNanos.put(nodes.getKey(), System.nanoTime() - startTime);
+                newRebuild.blockNetworks.put(nodes.getKey(), blockNetwork);
+            }, pool));
+        }
+        newRebuild.tasks = CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+
+        // a rebuild that is still running is superseded, this one has read everything again
+        rebuild = newRebuild;
+        entitiesChangedDuringRebuild.clear();
+    }
+
+    private void finishRebuild() {
+        NetworkRebuild finishedRebuild = rebuild;
+        rebuild = null;
+        List<EntityRef> changedEntities = Lists.newArrayList(entitiesChangedDuringRebuild);
+        entitiesChangedDuringRebuild.clear();
+        try {
+            finishedRebuild.tasks.join();
+        } catch (CompletionException e) {
+            logger.error("Rebuilding the entity networks failed, keeping the current ones", e.getCause());
+            return;
+        }
+
+        clearNetworks();
+        entityLookup = finishedRebuild.entityLookup;
+        nodeLookup = finishedRebuild.nodeLookup;
+        pendingEntitiesToBeAdded = finishedRebuild.pendingEntitiesToBeAdded;
+        for (EntityRef entityRef : pendingEntitiesToBeAdded.keySet()) {
+            scheduleRetry(entityRef);
+        }
+        for (Map.Entry<String, BlockNetwork> blockNetwork : finishedRebuild.blockNetworks.entrySet()) {
+            registerBlockNetwork(blockNetwork.getKey(), blockNetwork.getValue());
+            // the statistics are only touched on this thread, the rebuild timed itself
+            blockNetwork.getValue().getStatistics().record(Operation.REBUILD, finishedRebuild.rebuildNanos.get(blockNetwork.getKey()),
+                    blockNetwork.getValue().getNetworkSize());
+        }
+
+        // the rebuild read these entities before they changed
+        for (EntityRef entityRef : changedEntities) {
+            removeEntityFromNetworks(entityRef);
+            if (entityRef.exists() && entityRef.hasComponent(EntityNetworkComponent.class)) {
+                addEntityToNetworks(entityRef);
+            }
+        }
+    }
+
     private void resetAllNetworks() {
+        rebuild = null;
+        entitiesChangedDuringRebuild.clear();
+        clearNetworks();
+
+        for (EntityRef entityRef : entityManager.getEntitiesWith(EntityNetworkComponent.class)) {
+            addEntityToNetworks(entityRef);
+        }
+        applyQueuedChanges();
+    }
+
+    private void clearNetworks() {
+        for (Map.Entry<String, BlockNetwork> blockNetwork : blockNetworks.entrySet()) {
+            if (topologySubscriptions.containsKey(blockNetwork.getKey())) {
+                blockNetwork.getValue().dispatchDeferredChanges();
+                NetworkTopologyDelta removedNetworks = NetworkTopologyDelta.ofAllNetworks(blockNetwork.getValue(), false);
+                for (NetworkTopologySubscription subscription : topologySubscriptions.get(blockNetwork.getKey())) {
+                    subscription.offer(removedNetworks);
+                }
+            }
+        }
         nodeLookup.clear();
         entityLookup.clear();
         blockNetworks.clear();
+        networkOwners.clear();
+        trackedComponentIndices.clear();
+        queuedRefreshes.clear();
         pendingEntitiesToBeAdded.clear();
+        wokenEntities.clear();
+        failedAttempts.clear();
+        scheduledRetries.clear();
+        retryUpdates.clear();
+        dormantNodes.clear();
+        dormantEntityNodes.clear();
+        restoredNodes.clear();
+        restoredNodesToCheck.clear();
+    }
 
-        for (EntityRef entityRef : entityManager.getEntitiesWith(EntityNetworkComponent.class)) {
-            addEntityToNetworks(entityRef);
+    /**
+     * Everything a rebuild of the networks produces, swapped in all at once when it is done.
+     */
+    private static final class NetworkRebuild {
+        private final Multimap<NetworkNode, EntityRef> entityLookup = HashMultimap.create();
+        private final Multimap<EntityRef, NetworkNode> nodeLookup = HashMultimap.create();
+        private final Multimap<EntityRef, NetworkNodeBuilder> pendingEntitiesToBeAdded = HashMultimap.create();
+        // filled in by the tasks as they finish
+        private final Map<String, BlockNetwork> blockNetworks = Maps.newConcurrentMap();
+        private final Map<String, Long> rebuildNanos = Maps.newConcurrentMap();
+        private CompletableFuture<Void> tasks;
+
+        boolean isDone() {
+            return tasks.isDone();
+        }
+    }
+
+    /**
+     * Keeps networkOwners up to date for one block network.
+     */
+    private class NetworkOwnerTracker implements NetworkTopologyListener {
+        private final BlockNetwork blockNetwork;
+
+        NetworkOwnerTracker(BlockNetwork blockNetwork) {
+            this.blockNetwork = blockNetwork;
+        }
+
+        @Override
+        public void networkAdded(Network network) {
+            networkOwners.put(network, blockNetwork);
+        }
+
+        @Override
+        public void networkingNodeAdded(Network network, NetworkNode networkingNode) {
+        }
+
+        @Override
+        public void networkingNodeRemoved(Network network, NetworkNode networkingNode) {
+        }
+
+        @Override
+        public void networkRemoved(Network network) {
+            networkOwners.remove(network);
+        }
+
+        @Override
+        public void networksMerged(Network source, Network target, Collection<NetworkNode> movedNodes) {
+            networkOwners.remove(source);
+        }
+    }
+
+    /**
+     * Hands the changes of each frame to the subscriptions of the network id, until all of them are closed.
+     */
+    private class SubscriptionDispatcher implements NetworkTopologyListener {
+        private final String networkId;
+        private final BlockNetwork blockNetwork;
+
+        SubscriptionDispatcher(String networkId, BlockNetwork blockNetwork) {
+            this.networkId = networkId;
+            this.blockNetwork = blockNetwork;
+        }
+
+        @Override
+        public void topologyChanged(NetworkTopologyDelta delta) {
+            Set<NetworkTopologySubscription> subscriptions = topologySubscriptions.get(networkId);
+            subscriptions.removeIf(NetworkTopologySubscription::isClosed);
+            if (subscriptions.isEmpty()) {
+                blockNetwork.removeDeferredTopologyListener(this);
+                return;
+            }
+            for (NetworkTopologySubscription subscription : subscriptions) {
+                subscription.offer(delta);
+            }
+        }
+
+        @Override
+        public void networkAdded(Network network) {
+        }
+
+        @Override
+        public void networkingNodeAdded(Network network, NetworkNode networkingNode) {
+        }
+
+        @Override
+        public void networkingNodeRemoved(Network network, NetworkNode networkingNode) {
+        }
+
+        @Override
+        public void networkRemoved(Network network) {
         }
     }
 }
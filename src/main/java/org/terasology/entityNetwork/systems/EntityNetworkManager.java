@@ -16,19 +16,119 @@
 package org.terasology.entityNetwork.systems;
 
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.world.block.BlockRegion;
 import org.terasology.entityNetwork.Network;
 import org.terasology.entityNetwork.NetworkNode;
+import org.terasology.gestalt.entitysystem.component.Component;
 
 import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
 
 public interface EntityNetworkManager {
     Collection<NetworkNode> getNetworkNodes(Network network);
 
     Collection<Network> getNetworks(String networkId);
 
+    /**
+     * Goes through the nodes of a network without copying them, unlike {@link #getNetworkNodes(Network)}.  Nodes added or
+     * removed by the consumer only show up once the iteration is done.
+     */
+    void forEachNode(Network network, Consumer<NetworkNode> consumer);
+
+    /**
+     * Goes through the networks of a network id without copying them, unlike {@link #getNetworks(String)}.
+     */
+    void forEachNetwork(String networkId, Consumer<Network> consumer);
+
+    /**
+     * Goes through the networks of a node without copying them, unlike {@link #getNetworks(NetworkNode)}.
+     */
+    void forEachNetwork(NetworkNode node, Consumer<Network> consumer);
+
+    /**
+     * @return the entity of the node, or {@link EntityRef#NULL} if it has none, e.g. because the node is dormant
+     */
     EntityRef getEntityForNode(NetworkNode node);
 
+    /**
+     * A node is dormant while its entity is unloaded, e.g. along with its chunk.  It stays part of its networks, so that
+     * they keep their shape, but it has no entity and is not among the tracked entities until the entity is loaded again.
+     */
+    boolean isDormant(NetworkNode node);
+
     Collection<NetworkNode> getNodesForEntity(EntityRef entity);
 
     Collection<Network> getNetworks(NetworkNode node);
+
+    /**
+     * @return the block located nodes of all network ids within the region, e.g. to find the relays within reach of a new
+     * transmitter
+     */
+    Collection<NetworkNode> getNodesInRegion(BlockRegion region);
+
+    /**
+     * @return a number that grows whenever nodes join or leave the network, or -1 if the network is gone.  Anything worked
+     * out from the nodes of the network only needs to be worked out again once this changes.
+     */
+    long getTopologyVersion(Network network);
+
+    /**
+     * @return a number that grows along with the topology version, and also whenever the entities of the nodes change, e.g.
+     * when they are unloaded or a tracked component is added to or removed from them, or -1 if the network is gone.
+     * Anything worked out from the tracked entities of the network only needs to be worked out again once this changes.
+     */
+    long getMembershipVersion(Network network);
+
+    /**
+     * Works out how many connections each node of the network is away from the nearest node matching sources, e.g. the
+     * nearest producer.  The result is cached until the nodes of the network change, so keep hold of the predicate to
+     * benefit from that.
+     */
+    NetworkDistanceField computeDistanceField(Network network, Predicate<NetworkNode> sources);
+
+    /**
+     * Collapses every run of nodes with two connections in the network, e.g. a line of pipes or axles, into a single chain
+     * between the nodes around it.  The chains are kept up to date as the networks change, keep hold of the capacities to
+     * benefit from that, the chains are only kept for the last few capacities asked for.
+     *
+     * @param capacities how much each node lets through, e.g. the maximumFlowRate of the pipe of the node, the chains know
+     *                   the lowest capacity along them.  Nodes can be dormant, without an entity
+     */
+    CompressedNetwork computeCompressedNetwork(Network network, ToDoubleFunction<NetworkNode> capacities);
+
+    /**
+     * Starts keeping track of which entities in each network of the network id have the component, so that they can be
+     * found without going through all nodes.  Tracking the same component more than once does nothing.
+     */
+    void trackComponent(String networkId, Class<? extends Component> componentClass);
+
+    /**
+     * @return a read only view of the entities in the network that have the tracked component.  It changes along with the
+     * network, use {@link #forEachTrackedEntity} instead if what is done with the entities could change the network.
+     */
+    Collection<EntityRef> getTrackedEntities(Network network, Class<? extends Component> componentClass);
+
+    void forEachTrackedEntity(Network network, Class<? extends Component> componentClass, Consumer<EntityRef> consumer);
+
+    /**
+     * Entities are checked for tracked components when their nodes join a network.  Call this when a tracked component is
+     * added to or removed from an entity that is already part of a network, e.g. from an OnAddedComponent or
+     * BeforeRemoveComponent handler.  The entity is checked again the next time tracked entities are read.
+     */
+    void refreshTrackedComponents(EntityRef entity);
+
+    /**
+     * Starts collecting the changes to the networks of the network id, so that they can be taken from another thread.  The
+     * changes are handed over once per frame, with the changes that cancel each other out within the frame left out.
+     */
+    NetworkTopologySubscription subscribeToTopologyChanges(String networkId);
+
+    /**
+     * Starts publishing immutable graphs of the networks of the network id, so that they can be read on another thread while
+     * the networks keep changing.  The graphs are published again at the end of every frame in which the networks changed,
+     * for as long as the game runs.  Every call for the same network id returns the same graphs.
+     */
+    NetworkGraphs publishNetworkGraphs(String networkId);
 }
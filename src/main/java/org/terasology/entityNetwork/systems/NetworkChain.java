@@ -0,0 +1,70 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.ImmutableList;
+import org.terasology.entityNetwork.NetworkNode;
+
+import java.util.List;
+
+/**
+ * A run of connected nodes that each have exactly two connections, e.g. a straight line of pipes, between two nodes that
+ * do not, like junctions, tanks and machines.  A ring without any such node starts and ends at the same node.
+ */
+public final class NetworkChain {
+    private final NetworkNode start;
+    private final NetworkNode end;
+    private final ImmutableList<NetworkNode> innerNodes;
+    private final double bottleneck;
+
+    NetworkChain(NetworkNode start, NetworkNode end, List<NetworkNode> innerNodes, double bottleneck) {
+        this.start = start;
+        this.end = end;
+        this.innerNodes = ImmutableList.copyOf(innerNodes);
+        this.bottleneck = bottleneck;
+    }
+
+    public NetworkNode getStart() {
+        return start;
+    }
+
+    public NetworkNode getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the end of the chain that is not the given one, or the start if both ends are the same node
+     */
+    public NetworkNode getOtherEnd(NetworkNode node) {
+        return node.equals(start) ? end : start;
+    }
+
+    /**
+     * @return the nodes between the ends, in order from the start
+     */
+    public List<NetworkNode> getInnerNodes() {
+        return innerNodes;
+    }
+
+    /**
+     * @return the number of connections from one end to the other
+     */
+    public int getLength() {
+        return innerNodes.size() + 1;
+    }
+
+    /**
+     * @return the lowest capacity of the inner nodes, or positive infinity if the ends are connected directly
+     */
+    public double getBottleneck() {
+        return bottleneck;
+    }
+
+    NetworkNode getFirstStep() {
+        return innerNodes.isEmpty() ? end : innerNodes.get(0);
+    }
+
+    NetworkNode getLastStep() {
+        return innerNodes.isEmpty() ? start : innerNodes.get(innerNodes.size() - 1);
+    }
+}
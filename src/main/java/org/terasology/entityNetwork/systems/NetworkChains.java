@@ -0,0 +1,275 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import org.terasology.entityNetwork.Network;
+import org.terasology.entityNetwork.NetworkNode;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Keeps the chains of all networks of a {@link BlockNetwork} up to date as nodes come and go.  Changed nodes are only
+ * noted when the topology events come in, the chains through them and their neighbours are worked out again the next
+ * time a {@link CompressedNetwork} is asked for, so the rest of the chains are kept.
+ */
+class NetworkChains implements NetworkTopologyListener {
+    private final BlockNetwork blockNetwork;
+    private final ToDoubleFunction<NetworkNode> capacities;
+
+    // the nodes that are leaves or do not have two connections, and the nodes picked to break up rings
+    private final Set<NetworkNode> vertices = Sets.newHashSet();
+    // the vertices of each network and the other way around, leaves are part of several networks
+    private final SetMultimap<Network, NetworkNode> networkVertices = HashMultimap.create();
+    private final SetMultimap<NetworkNode, Network> vertexNetworks = HashMultimap.create();
+    private final SetMultimap<NetworkNode, NetworkChain> vertexChains = HashMultimap.create();
+    private final Map<NetworkNode, NetworkChain> innerNodeChains = Maps.newHashMap();
+    // nodes that were added, removed or changed since the chains were last worked out
+    private final Set<NetworkNode> changedNodes = Sets.newHashSet();
+    private final Map<Network, CompressedNetwork> compressedNetworks = Maps.newHashMap();
+
+    NetworkChains(BlockNetwork blockNetwork, ToDoubleFunction<NetworkNode> capacities) {
+        this.blockNetwork = blockNetwork;
+        this.capacities = capacities;
+        for (Network network : blockNetwork.getNetworks()) {
+            changedNodes.addAll(blockNetwork.getNetworkNodes(network));
+        }
+    }
+
+    CompressedNetwork getCompressedNetwork(Network network) {
+        update();
+        CompressedNetwork compressedNetwork = compressedNetworks.get(network);
+        if (compressedNetwork == null) {
+            Set<NetworkNode> networkVertexSet = networkVertices.get(network);
+            // every chain starts at a vertex, the ones of a leaf can lead into any of its networks
+            Set<NetworkChain> networkChains = Sets.newLinkedHashSet();
+            for (NetworkNode vertex : networkVertexSet) {
+                for (NetworkChain chain : vertexChains.get(vertex)) {
+                    // inner nodes are never leaves, so they are part of one network only
+                    boolean inNetwork = chain.getInnerNodes().isEmpty()
+                            ? networkVertexSet.contains(chain.getOtherEnd(vertex))
+                            : blockNetwork.getNetworks(chain.getInnerNodes().get(0)).contains(network);
+                    if (inNetwork) {
+                        networkChains.add(chain);
+                    }
+                }
+            }
+            compressedNetwork = new CompressedNetwork(networkVertexSet, networkChains);
+            compressedNetworks.put(network, compressedNetwork);
+        }
+        return compressedNetwork;
+    }
+
+    /**
+     * Notes that the capacity of the node might have changed.
+     */
+    void nodeChanged(NetworkNode node) {
+        changedNodes.add(node);
+        for (Network network : blockNetwork.getNetworks(node)) {
+            compressedNetworks.remove(network);
+        }
+    }
+
+    @Override
+    public void networkAdded(Network network) {
+    }
+
+    @Override
+    public void networkingNodeAdded(Network network, NetworkNode networkingNode) {
+        changedNodes.add(networkingNode);
+        compressedNetworks.remove(network);
+        if (vertices.contains(networkingNode)) {
+            indexVertex(network, networkingNode);
+        }
+    }
+
+    @Override
+    public void networkingNodeRemoved(Network network, NetworkNode networkingNode) {
+        changedNodes.add(networkingNode);
+        compressedNetworks.remove(network);
+        unindexVertex(network, networkingNode);
+    }
+
+    @Override
+    public void networkRemoved(Network network) {
+        compressedNetworks.remove(network);
+        for (NetworkNode vertex : networkVertices.removeAll(network)) {
+            vertexNetworks.remove(vertex, network);
+        }
+    }
+
+    @Override
+    public void networksMerged(Network source, Network target, Collection<NetworkNode> movedNodes) {
+        // the nodes keep their connections, only the networks they are part of change
+        compressedNetworks.remove(source);
+        compressedNetworks.remove(target);
+        for (NetworkNode vertex : networkVertices.removeAll(source)) {
+            vertexNetworks.remove(vertex, source);
+            indexVertex(target, vertex);
+        }
+    }
+
+    private void update() {
+        if (changedNodes.isEmpty()) {
+            return;
+        }
+        // a node that came or went changes the number of connections of its neighbours.  The neighbours of a removed node
+        // are found through the chains it was part of, which are taken apart below
+        Set<NetworkNode> affectedNodes = Sets.newHashSet(changedNodes);
+        for (NetworkNode node : changedNodes) {
+            if (blockNetwork.hasNetworkingNode(node)) {
+                Iterables.addAll(affectedNodes, blockNetwork.getAdjacentNodes(node));
+            }
+        }
+        changedNodes.clear();
+
+        // take apart every chain through an affected node, all of their nodes need to be walked again
+        Set<NetworkNode> nodesToWalk = Sets.newHashSet();
+        Queue<NetworkNode> nodesToTakeApart = Queues.newArrayDeque(affectedNodes);
+        NetworkNode node;
+        while ((node = nodesToTakeApart.poll()) != null) {
+            if (!nodesToWalk.add(node) && !vertices.contains(node)) {
+                continue;
+            }
+            NetworkChain chain = innerNodeChains.get(node);
+            if (chain != null) {
+                removeChain(chain, nodesToWalk, nodesToTakeApart);
+            }
+            for (NetworkChain vertexChain : Lists.newArrayList(vertexChains.get(node))) {
+                removeChain(vertexChain, nodesToWalk, nodesToTakeApart);
+            }
+            removeVertex(node);
+        }
+
+        List<NetworkNode> verticesToWalk = Lists.newArrayList();
+        Set<NetworkNode> looseNodes = Sets.newHashSet();
+        for (NetworkNode nodeToWalk : nodesToWalk) {
+            if (!blockNetwork.hasNetworkingNode(nodeToWalk)) {
+                continue;
+            }
+            // the chains through the node are worked out again, so the networks it is part of look different
+            for (Network network : blockNetwork.getNetworks(nodeToWalk)) {
+                compressedNetworks.remove(network);
+            }
+            if (vertices.contains(nodeToWalk) || isVertex(nodeToWalk)) {
+                addVertex(nodeToWalk);
+                verticesToWalk.add(nodeToWalk);
+            } else {
+                looseNodes.add(nodeToWalk);
+            }
+        }
+        for (NetworkNode vertex : verticesToWalk) {
+            for (NetworkNode adjacentNode : blockNetwork.getAdjacentNodes(vertex)) {
+                if (!hasChainTowards(vertex, adjacentNode)) {
+                    addChain(walk(vertex, adjacentNode), looseNodes);
+                }
+            }
+        }
+        while (!looseNodes.isEmpty()) {
+            // what is left are rings without any vertex, one of their nodes becomes one so that the ring is a chain
+            NetworkNode ringVertex = looseNodes.iterator().next();
+            looseNodes.remove(ringVertex);
+            addVertex(ringVertex);
+            addChain(walk(ringVertex, blockNetwork.getAdjacentNodes(ringVertex).iterator().next()), looseNodes);
+        }
+    }
+
+    private void addVertex(NetworkNode node) {
+        if (vertices.add(node)) {
+            for (Network network : blockNetwork.getNetworks(node)) {
+                indexVertex(network, node);
+            }
+        }
+    }
+
+    private void removeVertex(NetworkNode node) {
+        if (vertices.remove(node)) {
+            for (Network network : vertexNetworks.removeAll(node)) {
+                networkVertices.remove(network, node);
+            }
+        }
+    }
+
+    private void indexVertex(Network network, NetworkNode vertex) {
+        networkVertices.put(network, vertex);
+        vertexNetworks.put(vertex, network);
+    }
+
+    private void unindexVertex(Network network, NetworkNode vertex) {
+        networkVertices.remove(network, vertex);
+        vertexNetworks.remove(vertex, network);
+    }
+
+    private boolean isVertex(NetworkNode node) {
+        return node.isLeaf() || Iterables.size(blockNetwork.getAdjacentNodes(node)) != 2;
+    }
+
+    private boolean hasChainTowards(NetworkNode vertex, NetworkNode adjacentNode) {
+        for (NetworkChain chain : vertexChains.get(vertex)) {
+            if (chain.getStart().equals(vertex) && chain.getFirstStep().equals(adjacentNode)
+                    || chain.getEnd().equals(vertex) && chain.getLastStep().equals(adjacentNode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Follows the nodes with two connections from the vertex until the next vertex.
+     */
+    private NetworkChain walk(NetworkNode vertex, NetworkNode firstStep) {
+        List<NetworkNode> innerNodes = Lists.newArrayList();
+        double bottleneck = Double.POSITIVE_INFINITY;
+        NetworkNode previous = vertex;
+        NetworkNode current = firstStep;
+        while (!vertices.contains(current)) {
+            innerNodes.add(current);
+            bottleneck = Math.min(bottleneck, capacities.applyAsDouble(current));
+            NetworkNode next = null;
+            for (NetworkNode adjacentNode : blockNetwork.getAdjacentNodes(current)) {
+                if (!adjacentNode.equals(previous)) {
+                    next = adjacentNode;
+                }
+            }
+            previous = current;
+            current = next;
+        }
+        return new NetworkChain(vertex, current, innerNodes, bottleneck);
+    }
+
+    private void addChain(NetworkChain chain, Set<NetworkNode> looseNodes) {
+        vertexChains.put(chain.getStart(), chain);
+        vertexChains.put(chain.getEnd(), chain);
+        for (NetworkNode innerNode : chain.getInnerNodes()) {
+            innerNodeChains.put(innerNode, chain);
+            looseNodes.remove(innerNode);
+        }
+    }
+
+    private void removeChain(NetworkChain chain, Set<NetworkNode> nodesToWalk, Queue<NetworkNode> nodesToTakeApart) {
+        vertexChains.remove(chain.getStart(), chain);
+        vertexChains.remove(chain.getEnd(), chain);
+        for (NetworkNode end : Sets.newHashSet(chain.getStart(), chain.getEnd())) {
+            nodesToWalk.add(end);
+            if (blockNetwork.hasNetworkingNode(end) && !isVertex(end)) {
+                // a node picked to break up a ring, its other chain has to go as well so that it can be part of a chain
+                nodesToTakeApart.add(end);
+            }
+        }
+        for (NetworkNode innerNode : chain.getInnerNodes()) {
+            innerNodeChains.remove(innerNode);
+            nodesToWalk.add(innerNode);
+        }
+    }
+}
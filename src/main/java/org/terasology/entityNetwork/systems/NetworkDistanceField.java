@@ -0,0 +1,82 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import org.terasology.entityNetwork.NetworkNode;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The distance of every node in a network to the nearest of a set of source nodes, as worked out by
+ * {@link EntityNetworkManager#computeDistanceField}.  Distances are kept in flat arrays rather than a map of boxed values,
+ * so that a field covering a large network stays small.
+ */
+public final class NetworkDistanceField {
+    public static final int UNREACHABLE = -1;
+
+    // open addressing with linear probing, null marks a free slot
+    private final NetworkNode[] nodes;
+    private final int[] distances;
+    private final int mask;
+    private int size;
+
+    NetworkDistanceField(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+        nodes = new NetworkNode[capacity];
+        distances = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Sets the distance of a node, unless it already has one.
+     *
+     * @return whether the node did not have a distance yet
+     */
+    boolean putIfAbsent(NetworkNode node, int distance) {
+        int slot = findSlot(node);
+        if (nodes[slot] != null) {
+            return false;
+        }
+        nodes[slot] = node;
+        distances[slot] = distance;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the number of connections between the node and the nearest source, or {@link #UNREACHABLE} if the node can
+     * not be reached from any source
+     */
+    public int getDistance(NetworkNode node) {
+        int slot = findSlot(node);
+        return nodes[slot] != null ? distances[slot] : UNREACHABLE;
+    }
+
+    public boolean isReachable(NetworkNode node) {
+        return nodes[findSlot(node)] != null;
+    }
+
+    /**
+     * @return the number of nodes that can be reached from a source, including the sources themselves
+     */
+    public int size() {
+        return size;
+    }
+
+    public void forEach(ObjIntConsumer<NetworkNode> consumer) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] != null) {
+                consumer.accept(nodes[i], distances[i]);
+            }
+        }
+    }
+
+    private int findSlot(NetworkNode node) {
+        int hash = node.hashCode() * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (nodes[slot] != null && !nodes[slot].equals(node)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
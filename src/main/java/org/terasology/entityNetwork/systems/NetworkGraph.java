@@ -0,0 +1,122 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.ImmutableMap;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.entityNetwork.Network;
+import org.terasology.entityNetwork.NetworkNode;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * The nodes of one network, their connections and their entities as they were at one membership version.  It never
+ * changes, so it can be read on any thread while the network itself keeps changing.
+ * <p>
+ * Nodes are numbered from 0, and the connections are stored in compressed sparse row form: the neighbours of each node
+ * follow each other in one array, so going through them does not allocate.  Only connections within the network are kept.
+ */
+public final class NetworkGraph {
+    private final Network network;
+    private final long topologyVersion;
+    private final long membershipVersion;
+    private final NetworkNode[] nodes;
+    private final EntityRef[] entities;
+    // the neighbours of node i are neighbours[neighbourOffsets[i]] up to neighbours[neighbourOffsets[i + 1]]
+    private final int[] neighbourOffsets;
+    private final int[] neighbours;
+    private final ImmutableMap<NetworkNode, Integer> indices;
+
+    private NetworkGraph(Network network, long topologyVersion, long membershipVersion, NetworkNode[] nodes, EntityRef[] entities,
+                         int[] neighbourOffsets, int[] neighbours, ImmutableMap<NetworkNode, Integer> indices) {
+        this.network = network;
+        this.topologyVersion = topologyVersion;
+        this.membershipVersion = membershipVersion;
+        this.nodes = nodes;
+        this.entities = entities;
+        this.neighbourOffsets = neighbourOffsets;
+        this.neighbours = neighbours;
+        this.indices = indices;
+    }
+
+    static NetworkGraph of(BlockNetwork blockNetwork, Network network, Function<NetworkNode, EntityRef> entities) {
+        Collection<NetworkNode> networkNodes = blockNetwork.getNetworkNodes(network);
+        NetworkNode[] nodes = networkNodes.toArray(new NetworkNode[0]);
+        EntityRef[] nodeEntities = new EntityRef[nodes.length];
+        ImmutableMap.Builder<NetworkNode, Integer> indices = ImmutableMap.builderWithExpectedSize(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            nodeEntities[i] = entities.apply(nodes[i]);
+            indices.put(nodes[i], i);
+        }
+        ImmutableMap<NetworkNode, Integer> nodeIndices = indices.build();
+
+        int[] neighbourOffsets = new int[nodes.length + 1];
+        int[] neighbours = new int[16];
+        int edgeCount = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            neighbourOffsets[i] = edgeCount;
+            for (NetworkNode adjacentNode : blockNetwork.getAdjacentNodes(nodes[i])) {
+                Integer adjacentIndex = nodeIndices.get(adjacentNode);
+                // leaf nodes can be connected to nodes of other networks
+                if (adjacentIndex != null) {
+                    if (edgeCount == neighbours.length) {
+                        neighbours = Arrays.copyOf(neighbours, edgeCount * 2);
+                    }
+                    neighbours[edgeCount++] = adjacentIndex;
+                }
+            }
+        }
+        neighbourOffsets[nodes.length] = edgeCount;
+        return new NetworkGraph(network, blockNetwork.getTopologyVersion(network), blockNetwork.getMembershipVersion(network),
+                nodes, nodeEntities, neighbourOffsets, Arrays.copyOf(neighbours, edgeCount), nodeIndices);
+    }
+
+    public Network getNetwork() {
+        return network;
+    }
+
+    public long getTopologyVersion() {
+        return topologyVersion;
+    }
+
+    public long getMembershipVersion() {
+        return membershipVersion;
+    }
+
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public NetworkNode getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * @return the entity of the node when the graph was made, or {@link EntityRef#NULL} if it had none.  Only the game
+     * thread may look at the components of the entity.
+     */
+    public EntityRef getEntity(int index) {
+        return entities[index];
+    }
+
+    /**
+     * @return the index of the node, or -1 if it is not part of the network
+     */
+    public int indexOf(NetworkNode node) {
+        Integer index = indices.get(node);
+        return index != null ? index : -1;
+    }
+
+    public int getNeighbourCount(int index) {
+        return neighbourOffsets[index + 1] - neighbourOffsets[index];
+    }
+
+    /**
+     * @return the index of the n-th neighbour of the node
+     */
+    public int getNeighbour(int index, int n) {
+        return neighbours[neighbourOffsets[index] + n];
+    }
+}
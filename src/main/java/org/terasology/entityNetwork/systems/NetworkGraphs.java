@@ -0,0 +1,34 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.ImmutableMap;
+import org.terasology.entityNetwork.Network;
+
+/**
+ * The {@link NetworkGraph}s of all networks of one network id, published by the game thread once per frame so that they
+ * can be read on any thread without locks.  The graphs of networks that did not change are kept from one frame to the
+ * next, so publishing only costs as much as the changes.
+ */
+public final class NetworkGraphs {
+    private volatile ImmutableMap<Network, NetworkGraph> graphs = ImmutableMap.of();
+
+    void publish(ImmutableMap<Network, NetworkGraph> publishedGraphs) {
+        graphs = publishedGraphs;
+    }
+
+    /**
+     * @return the graphs of all networks as they were at the end of one frame.  Keep hold of the map rather than calling
+     * this again to be sure that the graphs belong to the same frame.
+     */
+    public ImmutableMap<Network, NetworkGraph> getGraphs() {
+        return graphs;
+    }
+
+    /**
+     * @return the latest graph of the network, or null if the network is gone
+     */
+    public NetworkGraph getGraph(Network network) {
+        return graphs.get(network);
+    }
+}
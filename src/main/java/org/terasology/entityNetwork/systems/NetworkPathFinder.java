@@ -0,0 +1,258 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import org.terasology.entityNetwork.BlockLocationNetworkNode;
+import org.terasology.entityNetwork.NetworkNode;
+
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+/**
+ * Finds shortest paths over the connections of a {@link BlockNetwork}.
+ * <p>
+ * Paths between block located nodes are searched for with A*, guided by how far apart the blocks are.  Searches with an
+ * edge filter search from both ends at once instead, as the filter usually only cares about the very end of the path.
+ * Everything else falls back to a breadth first search.
+ */
+class NetworkPathFinder {
+    private final Map<NetworkNode, Set<NetworkNode>> adjacencyList;
+    // no connection has ever been longer than this, so one step can not get closer to the target than this
+    private int maximumConnectionLength = 1;
+    // the distance between blocks says nothing about the path once nodes without a location are connected
+    private boolean hasUnlocatedConnections;
+
+    NetworkPathFinder(Map<NetworkNode, Set<NetworkNode>> adjacencyList) {
+        this.adjacencyList = adjacencyList;
+    }
+
+    public void connectionAdded(NetworkNode first, NetworkNode second) {
+        if (first instanceof BlockLocationNetworkNode && second instanceof BlockLocationNetworkNode) {
+            long length = ((BlockLocationNetworkNode) first).gridDistance((BlockLocationNetworkNode) second);
+            maximumConnectionLength = (int) Math.max(maximumConnectionLength, length);
+        } else {
+            hasUnlocatedConnections = true;
+        }
+    }
+
+    /**
+     * @return the path from start up to the node before end, or null if there is none within maxDistance
+     */
+    public List<NetworkNode> findPath(NetworkNode start, NetworkNode end, BiPredicate<NetworkNode, NetworkNode> edgeFilter, int maxDistance) {
+        if (!adjacencyList.containsKey(start) || !adjacencyList.containsKey(end)) {
+            return null;
+        }
+
+        if (edgeFilter != null) {
+            return findPathFromBothEnds(start, end, edgeFilter, maxDistance);
+        } else if (!hasUnlocatedConnections && start instanceof BlockLocationNetworkNode && end instanceof BlockLocationNetworkNode) {
+            return findPathTowards((BlockLocationNetworkNode) start, (BlockLocationNetworkNode) end, maxDistance);
+        } else {
+            return findPathBreadthFirst(start, end, maxDistance);
+        }
+    }
+
+    private List<NetworkNode> findPathBreadthFirst(NetworkNode start, NetworkNode end, int maxDistance) {
+        Queue<NetworkNode> currentNodes = Queues.newArrayDeque();
+        Map<NetworkNode, NetworkNode> cameFrom = Maps.newHashMap();
+        Map<NetworkNode, Integer> distances = Maps.newHashMap();
+
+        currentNodes.add(start);
+        distances.put(start, 0);
+        while (currentNodes.size() > 0) {
+            NetworkNode currentNode = currentNodes.poll();
+
+            int currentConnectedDistance = distances.get(currentNode) + 1;
+            if (currentConnectedDistance > maxDistance) {
+                // the queue is in order of distance, everything after this is too far away as well
+                return null;
+            }
+            for (NetworkNode connectedNode : adjacencyList.get(currentNode)) {
+                // the first time a node is reached is along a shortest path
+                if (!distances.containsKey(connectedNode)) {
+                    distances.put(connectedNode, currentConnectedDistance);
+                    cameFrom.put(connectedNode, currentNode);
+                    if (connectedNode.equals(end)) {
+                        return buildPath(cameFrom, end, currentConnectedDistance);
+                    }
+                    currentNodes.add(connectedNode);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A* search, estimating the remaining distance by how many of the longest connections it takes to cover the distance
+     * between the blocks.  This never overestimates, so the path found is a shortest one.
+     */
+    private List<NetworkNode> findPathTowards(BlockLocationNetworkNode start, BlockLocationNetworkNode end, int maxDistance) {
+        PriorityQueue<SearchStep> openSteps = new PriorityQueue<>();
+        Map<NetworkNode, NetworkNode> cameFrom = Maps.newHashMap();
+        Map<NetworkNode, Integer> distances = Maps.newHashMap();
+
+        distances.put(start, 0);
+        openSteps.add(new SearchStep(start, 0, estimateDistance(start, end)));
+        while (!openSteps.isEmpty()) {
+            SearchStep step = openSteps.poll();
+            if (step.distance > distances.get(step.node)) {
+                // a shorter way to this node has been found since
+                continue;
+            }
+            if (step.estimatedLength > maxDistance) {
+                return null;
+            }
+            if (step.node.equals(end)) {
+                return buildPath(cameFrom, end, step.distance);
+            }
+
+            int connectedDistance = step.distance + 1;
+            for (NetworkNode connectedNode : adjacencyList.get(step.node)) {
+                Integer knownDistance = distances.get(connectedNode);
+                if (knownDistance == null || knownDistance > connectedDistance) {
+                    distances.put(connectedNode, connectedDistance);
+                    cameFrom.put(connectedNode, step.node);
+                    int estimatedLength = connectedDistance + estimateDistance((BlockLocationNetworkNode) connectedNode, end);
+                    openSteps.add(new SearchStep(connectedNode, connectedDistance, estimatedLength));
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private int estimateDistance(BlockLocationNetworkNode from, BlockLocationNetworkNode to) {
+        long gridDistance = from.gridDistance(to);
+        return (int) ((gridDistance + maximumConnectionLength - 1) / maximumConnectionLength);
+    }
+
+    /**
+     * Breadth first search from start and from end, a level at a time on whichever side has fewer nodes to look at.  Once
+     * every node up to forwardDepth from start and up to backwardDepth from end is known, any path no longer than the sum of
+     * the two has been seen, so the search can stop as soon as the shortest one seen is that short.
+     */
+    private List<NetworkNode> findPathFromBothEnds(NetworkNode start, NetworkNode end, BiPredicate<NetworkNode, NetworkNode> edgeFilter,
+                                                   int maxDistance) {
+        Map<NetworkNode, Integer> forwardDistances = Maps.newHashMap();
+        Map<NetworkNode, Integer> backwardDistances = Maps.newHashMap();
+        Map<NetworkNode, NetworkNode> cameFrom = Maps.newHashMap();
+        Map<NetworkNode, NetworkNode> leadsTo = Maps.newHashMap();
+        List<NetworkNode> forwardNodes = Lists.newArrayList(start);
+        List<NetworkNode> backwardNodes = Lists.newArrayList(end);
+        forwardDistances.put(start, 0);
+        backwardDistances.put(end, 0);
+        int forwardDepth = 0;
+        int backwardDepth = 0;
+
+        NetworkNode meetingNode = null;
+        int shortestLength = Integer.MAX_VALUE;
+        while (shortestLength > forwardDepth + backwardDepth) {
+            if (forwardDepth + backwardDepth >= maxDistance || forwardNodes.isEmpty() || backwardNodes.isEmpty()) {
+                // either nothing short enough is left, or one side has seen everything it can reach
+                break;
+            }
+
+            List<NetworkNode> nextNodes = Lists.newArrayList();
+            if (forwardNodes.size() <= backwardNodes.size()) {
+                int connectedDistance = ++forwardDepth;
+                for (NetworkNode currentNode : forwardNodes) {
+                    for (NetworkNode connectedNode : adjacencyList.get(currentNode)) {
+                        if (!forwardDistances.containsKey(connectedNode) && edgeFilter.test(currentNode, connectedNode)) {
+                            forwardDistances.put(connectedNode, connectedDistance);
+                            cameFrom.put(connectedNode, currentNode);
+                            nextNodes.add(connectedNode);
+
+                            Integer remainingDistance = backwardDistances.get(connectedNode);
+                            if (remainingDistance != null && connectedDistance + remainingDistance < shortestLength) {
+                                shortestLength = connectedDistance + remainingDistance;
+                                meetingNode = connectedNode;
+                            }
+                        }
+                    }
+                }
+                forwardNodes = nextNodes;
+            } else {
+                int connectedDistance = ++backwardDepth;
+                for (NetworkNode currentNode : backwardNodes) {
+                    for (NetworkNode connectedNode : adjacencyList.get(currentNode)) {
+                        // the path goes the other way, so does the filter
+                        if (!backwardDistances.containsKey(connectedNode) && edgeFilter.test(connectedNode, currentNode)) {
+                            backwardDistances.put(connectedNode, connectedDistance);
+                            leadsTo.put(connectedNode, currentNode);
+                            nextNodes.add(connectedNode);
+
+                            Integer travelledDistance = forwardDistances.get(connectedNode);
+                            if (travelledDistance != null && connectedDistance + travelledDistance < shortestLength) {
+                                shortestLength = connectedDistance + travelledDistance;
+                                meetingNode = connectedNode;
+                            }
+                        }
+                    }
+                }
+                backwardNodes = nextNodes;
+            }
+        }
+
+        if (meetingNode == null || shortestLength > maxDistance) {
+            return null;
+        }
+
+        NetworkNode[] path = new NetworkNode[shortestLength];
+        int meetingIndex = forwardDistances.get(meetingNode);
+        NetworkNode currentNode = meetingNode;
+        for (int i = meetingIndex; i >= 0; i--) {
+            // the end itself is not part of the path
+            if (i < shortestLength) {
+                path[i] = currentNode;
+            }
+            currentNode = cameFrom.get(currentNode);
+        }
+        currentNode = leadsTo.get(meetingNode);
+        for (int i = meetingIndex + 1; i < shortestLength; i++) {
+            path[i] = currentNode;
+            currentNode = leadsTo.get(currentNode);
+        }
+        return ImmutableList.copyOf(path);
+    }
+
+    private static List<NetworkNode> buildPath(Map<NetworkNode, NetworkNode> cameFrom, NetworkNode end, int distance) {
+        NetworkNode[] path = new NetworkNode[distance];
+        NetworkNode currentNode = cameFrom.get(end);
+        for (int i = distance - 1; i >= 0; i--) {
+            path[i] = currentNode;
+            currentNode = cameFrom.get(currentNode);
+        }
+        return ImmutableList.copyOf(path);
+    }
+
+    private static final class SearchStep implements Comparable<SearchStep> {
+        private final NetworkNode node;
+        private final int distance;
+        private final int estimatedLength;
+
+        SearchStep(NetworkNode node, int distance, int estimatedLength) {
+            this.node = node;
+            this.distance = distance;
+            this.estimatedLength = estimatedLength;
+        }
+
+        @Override
+        public int compareTo(SearchStep other) {
+            int result = Integer.compare(estimatedLength, other.estimatedLength);
+            if (result == 0) {
+                // prefer the steps furthest along, they are most likely to lead straight to the target
+                result = Integer.compare(other.distance, distance);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+import org.terasology.entityNetwork.Network;
+import org.terasology.entityNetwork.NetworkNode;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All the changes made to the networks of a {@link BlockNetwork} by one update, or by all the updates of a frame, in the
+ * order they happened.
+ * <p>
+ * Changes that cancel each other out are left out, like a node that is removed from a network and added back to it, or a
+ * network that only existed for the duration of the update.
+ * <p>
+ * A delta is not changed anymore once it was handed to the listeners, so it can be replayed on any thread.
+ */
+public class NetworkTopologyDelta {
+    private enum Type {
+        NETWORK_ADDED,
+        NODE_ADDED,
+        NODE_REMOVED,
+        NETWORK_REMOVED,
+        NETWORKS_MERGED
+    }
+
+    private static final class Change {
+        final Type type;
+        final Network network;
+        final NetworkNode node;
+        Network target;
+        List<NetworkNode> movedNodes;
+        boolean cancelled;
+
+        Change(Type type, Network network, NetworkNode node) {
+            this.type = type;
+            this.network = network;
+            this.node = node;
+        }
+    }
+
+    private final List<Change> changes = Lists.newArrayList();
+    // the last change of each node in each network that could still be cancelled out
+    private final Table<Network, NetworkNode, Change> lastNodeChanges = HashBasedTable.create();
+    private final Map<Network, Change> addedNetworks = Maps.newHashMap();
+    // how many changes that are not cancelled each network is involved in
+    private final Map<Network, Integer> changeCounts = Maps.newHashMap();
+    private int size;
+
+    /**
+     * @return a delta that adds all the networks of the block network along with their nodes, or removes them all
+     */
+    static NetworkTopologyDelta ofAllNetworks(BlockNetwork blockNetwork, boolean added) {
+        NetworkTopologyDelta delta = new NetworkTopologyDelta();
+        for (Network network : blockNetwork.getNetworks()) {
+            if (added) {
+                delta.networkAdded(network);
+            }
+            for (NetworkNode node : blockNetwork.getNetworkNodes(network)) {
+                if (added) {
+                    delta.networkingNodeAdded(network, node);
+                } else {
+                    delta.networkingNodeRemoved(network, node);
+                }
+            }
+            if (!added) {
+                delta.networkRemoved(network);
+            }
+        }
+        return delta;
+    }
+
+    void networkAdded(Network network) {
+        Change change = append(Type.NETWORK_ADDED, network, null);
+        addedNetworks.put(network, change);
+    }
+
+    void networkRemoved(Network network) {
+        Change added = addedNetworks.remove(network);
+        lastNodeChanges.row(network).clear();
+        if (added != null && changeCounts.getOrDefault(network, 0) == 1) {
+            // nobody needs to know about a network that came and went within this update
+            cancel(added);
+            changeCounts.remove(network);
+            return;
+        }
+        append(Type.NETWORK_REMOVED, network, null);
+    }
+
+    void networksMerged(Network source, Network target, Collection<NetworkNode> movedNodes) {
+        Change change = append(Type.NETWORKS_MERGED, source, null);
+        change.target = target;
+        change.movedNodes = Lists.newArrayList(movedNodes);
+        changeCounts.merge(target, 1, Integer::sum);
+        // the moved nodes got to the target by the merge, so none of their earlier changes can be cancelled out anymore
+        addedNetworks.remove(source);
+        lastNodeChanges.row(source).clear();
+        for (NetworkNode node : movedNodes) {
+            lastNodeChanges.remove(target, node);
+        }
+    }
+
+    void networkingNodeAdded(Network network, NetworkNode networkingNode) {
+        nodeChanged(Type.NODE_ADDED, Type.NODE_REMOVED, network, networkingNode);
+    }
+
+    void networkingNodeRemoved(Network network, NetworkNode networkingNode) {
+        nodeChanged(Type.NODE_REMOVED, Type.NODE_ADDED, network, networkingNode);
+    }
+
+    private void nodeChanged(Type type, Type opposite, Network network, NetworkNode networkingNode) {
+        Change last = lastNodeChanges.remove(network, networkingNode);
+        if (last != null && last.type == opposite) {
+            cancel(last);
+        } else {
+            lastNodeChanges.put(network, networkingNode, append(type, network, networkingNode));
+        }
+    }
+
+    private Change append(Type type, Network network, NetworkNode networkingNode) {
+        Change change = new Change(type, network, networkingNode);
+        changes.add(change);
+        changeCounts.merge(network, 1, Integer::sum);
+        size++;
+        return change;
+    }
+
+    private void cancel(Change change) {
+        change.cancelled = true;
+        changeCounts.merge(change.network, -1, Integer::sum);
+        size--;
+    }
+
+    /**
+     * Adds the changes of a later delta, cancelling out the changes that undo the ones already in this delta.
+     */
+    void addAll(NetworkTopologyDelta later) {
+        for (Change change : later.changes) {
+            if (change.cancelled) {
+                continue;
+            }
+            switch (change.type) {
+                case NETWORK_ADDED:
+                    networkAdded(change.network);
+                    break;
+                case NODE_ADDED:
+                    networkingNodeAdded(change.network, change.node);
+                    break;
+                case NODE_REMOVED:
+                    networkingNodeRemoved(change.network, change.node);
+                    break;
+                case NETWORK_REMOVED:
+                    networkRemoved(change.network);
+                    break;
+                case NETWORKS_MERGED:
+                    networksMerged(change.network, change.target, change.movedNodes);
+                    break;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Tells the listener about every change, one at a time and in order.
+     */
+    public void replay(NetworkTopologyListener listener) {
+        for (Change change : changes) {
+            if (change.cancelled) {
+                continue;
+            }
+            switch (change.type) {
+                case NETWORK_ADDED:
+                    listener.networkAdded(change.network);
+                    break;
+                case NODE_ADDED:
+                    listener.networkingNodeAdded(change.network, change.node);
+                    break;
+                case NODE_REMOVED:
+                    listener.networkingNodeRemoved(change.network, change.node);
+                    break;
+                case NETWORK_REMOVED:
+                    listener.networkRemoved(change.network);
+                    break;
+                case NETWORKS_MERGED:
+                    listener.networksMerged(change.network, change.target, change.movedNodes);
+                    break;
+            }
+        }
+    }
+}
@@ -3,7 +3,9 @@ package org.terasology.entityNetwork.systems;
 import org.terasology.entityNetwork.Network;
 import org.terasology.entityNetwork.NetworkNode;
 
-interface NetworkTopologyListener {
+import java.util.Collection;
+
+public interface NetworkTopologyListener {
     public void networkAdded(Network network);
 
     public void networkingNodeAdded(Network network, NetworkNode networkingNode);
@@ -11,4 +13,27 @@ interface NetworkTopologyListener {
     public void networkingNodeRemoved(Network network, NetworkNode networkingNode);
 
     public void networkRemoved(Network network);
+
+    /**
+     * Called when all the nodes of the source network moved to the target network, which also means the source network is
+     * gone.  By default this is passed on as the removal of each node from the source network, the removal of the source
+     * network, and the addition of each node to the target network.
+     */
+    default void networksMerged(Network source, Network target, Collection<NetworkNode> movedNodes) {
+        for (NetworkNode node : movedNodes) {
+            networkingNodeRemoved(source, node);
+        }
+        networkRemoved(source);
+        for (NetworkNode node : movedNodes) {
+            networkingNodeAdded(target, node);
+        }
+    }
+
+    /**
+     * Called once after each update of the networks with everything that changed.  By default every change is passed on
+     * to the single change methods.
+     */
+    default void topologyChanged(NetworkTopologyDelta delta) {
+        delta.replay(this);
+    }
 }
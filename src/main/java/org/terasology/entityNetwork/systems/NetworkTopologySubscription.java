@@ -0,0 +1,61 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The changes to the networks of one network id, handed over once per frame so that they can be worked with on another
+ * thread, e.g. to keep routes up to date in the background.  The first delta adds the networks that already existed when
+ * the subscription was made, and when the networks are reset the old ones are removed before the new ones are added, so
+ * replaying every delta in order always gives the networks as they are on the game thread.
+ * <p>
+ * Taking deltas does not block the game thread.  Only the networks and nodes passed to the listeners can be used on another
+ * thread, the {@link EntityNetworkManager} can only be used on the game thread.  Deltas pile up until they are taken, so
+ * close subscriptions that are not needed anymore.
+ */
+public final class NetworkTopologySubscription {
+    private final Queue<NetworkTopologyDelta> deltas = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    void offer(NetworkTopologyDelta delta) {
+        if (!closed && !delta.isEmpty()) {
+            deltas.offer(delta);
+        }
+    }
+
+    /**
+     * @return the oldest delta that was not taken yet, or null if there is none
+     */
+    public NetworkTopologyDelta poll() {
+        return deltas.poll();
+    }
+
+    /**
+     * Replays all the deltas that were not taken yet to the listener, oldest first.
+     *
+     * @return whether there were any
+     */
+    public boolean replayAll(NetworkTopologyListener listener) {
+        boolean replayed = false;
+        NetworkTopologyDelta delta;
+        while ((delta = deltas.poll()) != null) {
+            listener.topologyChanged(delta);
+            replayed = true;
+        }
+        return replayed;
+    }
+
+    /**
+     * Stops collecting changes, can be called from any thread.
+     */
+    public void close() {
+        closed = true;
+        deltas.clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,195 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.joml.Vector3ic;
+import org.terasology.entityNetwork.BlockLocationNetworkNode;
+import org.terasology.entityNetwork.BlockPositionKey;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Finds block located network nodes by position so that connecting a new node only needs to look at its neighborhood.
+ * <p>
+ * Nodes are bucketed per cubic cell, and within a cell by their packed block position.  Cells are at least as big as the
+ * longest reach of the indexed nodes, so the nodes within reach of any node are in at most 27 cells.  Short reaches are
+ * looked up position by position instead.
+ */
+class SpatialNodeIndex {
+    private static final Map<Long, List<BlockLocationNetworkNode>> EMPTY_CELL = Collections.emptyMap();
+    // cells are at least 32 blocks wide, the size of a chunk
+    private static final int MIN_CELL_POWER = 5;
+    // the 63 positions within this distance are looked up one by one rather than going through the cells around them
+    private static final int MAX_PROBED_DISTANCE = 3;
+    // no two positions in the range of BlockPositionKey are further apart, longer reaches are cut down to this
+    private static final int MAX_GRID_DISTANCE = 3 << 21;
+
+    // cell key -> (block key -> nodes at that block)
+    private Map<Long, Map<Long, List<BlockLocationNetworkNode>>> cells = Maps.newHashMap();
+    private int cellPower = MIN_CELL_POWER;
+    private int size;
+
+    public void add(BlockLocationNetworkNode node) {
+        int reach = clampDistance(node.getMaximumGridDistance());
+        if (reach > 1 << cellPower) {
+            growCells(reach);
+        }
+        addToCell(node);
+        size++;
+    }
+
+    private void addToCell(BlockLocationNetworkNode node) {
+        cells.computeIfAbsent(cellKey(node.x(), node.y(), node.z()), k -> Maps.newHashMap())
+                .computeIfAbsent(node.getPackedLocation(), k -> Lists.newArrayListWithCapacity(1))
+                .add(node);
+    }
+
+    /**
+     * Regroups the nodes into cells big enough for the reach.  Cells only grow while there are nodes, as they double in size
+     * every time the regrouping does not cost much overall.  They go back to their smallest size once the index is empty.
+     */
+    private void growCells(int reach) {
+        Map<Long, Map<Long, List<BlockLocationNetworkNode>>> oldCells = cells;
+        cellPower = 32 - Integer.numberOfLeadingZeros(reach - 1);
+        cells = Maps.newHashMap();
+        for (Map<Long, List<BlockLocationNetworkNode>> cell : oldCells.values()) {
+            for (List<BlockLocationNetworkNode> nodes : cell.values()) {
+                for (BlockLocationNetworkNode node : nodes) {
+                    addToCell(node);
+                }
+            }
+        }
+    }
+
+    public boolean remove(BlockLocationNetworkNode node) {
+        long cellKey = cellKey(node.x(), node.y(), node.z());
+        Map<Long, List<BlockLocationNetworkNode>> cell = cells.get(cellKey);
+        if (cell == null) {
+            return false;
+        }
+        long blockKey = node.getPackedLocation();
+        List<BlockLocationNetworkNode> nodes = cell.get(blockKey);
+        if (nodes == null || !nodes.remove(node)) {
+            return false;
+        }
+        if (nodes.isEmpty()) {
+            cell.remove(blockKey);
+            if (cell.isEmpty()) {
+                cells.remove(cellKey);
+            }
+        }
+        size--;
+        if (size == 0) {
+            cellPower = MIN_CELL_POWER;
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Visits every indexed node whose grid (manhattan) distance from the center is at most the given distance.
+     */
+    public void forEachWithin(Vector3ic center, int maximumDistance, Consumer<BlockLocationNetworkNode> consumer) {
+        if (maximumDistance < 0) {
+            return;
+        }
+        // the center is in the range of BlockPositionKey, so the corners of the box cannot overflow
+        int distance = clampDistance(maximumDistance);
+        if (distance > MAX_PROBED_DISTANCE) {
+            forEachInBox(center.x() - distance, center.y() - distance, center.z() - distance,
+                    center.x() + distance, center.y() + distance, center.z() + distance, node -> {
+                        if (Math.abs(node.x() - center.x()) + Math.abs(node.y() - center.y()) + Math.abs(node.z() - center.z()) <= distance) {
+                            consumer.accept(node);
+                        }
+                    });
+            return;
+        }
+
+        long lastCellKey = 0;
+        Map<Long, List<BlockLocationNetworkNode>> lastCell = null;
+        for (int dx = -distance; dx <= distance; dx++) {
+            int remainingX = distance - Math.abs(dx);
+            for (int dy = -remainingX; dy <= remainingX; dy++) {
+                int remainingY = remainingX - Math.abs(dy);
+                for (int dz = -remainingY; dz <= remainingY; dz++) {
+                    int x = center.x() + dx;
+                    int y = center.y() + dy;
+                    int z = center.z() + dz;
+                    long cellKey = cellKey(x, y, z);
+                    if (lastCell == null || cellKey != lastCellKey) {
+                        lastCell = cells.get(cellKey);
+                        lastCellKey = cellKey;
+                        if (lastCell == null) {
+                            // remember the miss as an empty cell
+                            lastCell = EMPTY_CELL;
+                        }
+                    }
+                    List<BlockLocationNetworkNode> nodes = lastCell.get(BlockPositionKey.pack(x, y, z));
+                    if (nodes != null) {
+                        nodes.forEach(consumer);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every indexed node within the box, both corners included.
+     */
+    public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Consumer<BlockLocationNetworkNode> consumer) {
+        if (minX > maxX || minY > maxY || minZ > maxZ) {
+            return;
+        }
+        int minCellX = minX >> cellPower;
+        int minCellY = minY >> cellPower;
+        int minCellZ = minZ >> cellPower;
+        int maxCellX = maxX >> cellPower;
+        int maxCellY = maxY >> cellPower;
+        int maxCellZ = maxZ >> cellPower;
+        long cellCount = (maxCellX - (long) minCellX + 1) * (maxCellY - (long) minCellY + 1) * (maxCellZ - (long) minCellZ + 1);
+        if (cellCount > cells.size()) {
+            // the box covers more cells than there are, going through the ones there are is quicker
+            for (Map<Long, List<BlockLocationNetworkNode>> cell : cells.values()) {
+                forEachInBox(cell, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+            }
+            return;
+        }
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                    Map<Long, List<BlockLocationNetworkNode>> cell = cells.get(BlockPositionKey.pack(cellX, cellY, cellZ));
+                    if (cell != null) {
+                        forEachInBox(cell, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void forEachInBox(Map<Long, List<BlockLocationNetworkNode>> cell, int minX, int minY, int minZ,
+                                     int maxX, int maxY, int maxZ, Consumer<BlockLocationNetworkNode> consumer) {
+        for (List<BlockLocationNetworkNode> nodes : cell.values()) {
+            BlockLocationNetworkNode node = nodes.get(0);
+            if (node.x() >= minX && node.x() <= maxX && node.y() >= minY && node.y() <= maxY
+                    && node.z() >= minZ && node.z() <= maxZ) {
+                nodes.forEach(consumer);
+            }
+        }
+    }
+
+    private long cellKey(int x, int y, int z) {
+        return BlockPositionKey.pack(x >> cellPower, y >> cellPower, z >> cellPower);
+    }
+
+    private static int clampDistance(int distance) {
+        return Math.min(distance, MAX_GRID_DISTANCE);
+    }
+}
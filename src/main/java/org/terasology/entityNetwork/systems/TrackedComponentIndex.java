@@ -0,0 +1,175 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.entityNetwork.Network;
+import org.terasology.entityNetwork.NetworkNode;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Keeps track of which entities in each network of a {@link BlockNetwork} have one of the tracked components, so that
+ * systems do not need to look at every node of a network to find e.g. its producers.
+ * <p>
+ * Entities are counted once for each of their nodes in a network, so an entity with several nodes stays tracked until the
+ * last of them leaves.
+ */
+class TrackedComponentIndex implements NetworkTopologyListener {
+    private final BlockNetwork blockNetwork;
+    private final Set<Class<? extends Component>> componentClasses;
+    private final Function<NetworkNode, EntityRef> entityLookup;
+    // the entity of each node, only kept while components are tracked
+    private final Map<NetworkNode, EntityRef> nodeEntities = Maps.newHashMap();
+    private final Map<Network, Map<Class<? extends Component>, Multiset<EntityRef>>> trackedEntities = Maps.newHashMap();
+
+    /**
+     * @param componentClasses the components to track, this can change as long as {@link #startTracking} is called
+     * @param entityLookup the entity of a node, or null if there is none
+     */
+    TrackedComponentIndex(BlockNetwork blockNetwork, Set<Class<? extends Component>> componentClasses,
+                          Function<NetworkNode, EntityRef> entityLookup) {
+        this.blockNetwork = blockNetwork;
+        this.componentClasses = componentClasses;
+        this.entityLookup = entityLookup;
+    }
+
+    /**
+     * Picks up the entities of all existing nodes with a newly tracked component.
+     */
+    public void startTracking(Class<? extends Component> componentClass) {
+        for (Network network : blockNetwork.getNetworks()) {
+            for (NetworkNode node : blockNetwork.getNetworkNodes(network)) {
+                EntityRef entity = nodeEntities.computeIfAbsent(node, entityLookup);
+                if (entity != null && entity.hasComponent(componentClass)) {
+                    getTrackedEntities(network, componentClass).add(entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called as soon as a node belongs to an entity.  An equal node can still be part of the networks, waiting to be
+     * replaced, in which case the networks never report it as added again.
+     */
+    public void nodeAssigned(NetworkNode node, EntityRef entity) {
+        if (!componentClasses.isEmpty()) {
+            nodeEntities.put(node, entity);
+            for (Network network : blockNetwork.getNetworks(node)) {
+                addTrackedEntity(network, entity);
+            }
+        }
+    }
+
+    /**
+     * Called as soon as a node no longer belongs to an entity, before it is removed from the networks.
+     */
+    public void nodeUnassigned(NetworkNode node) {
+        EntityRef entity = nodeEntities.remove(node);
+        if (entity != null) {
+            for (Network network : blockNetwork.getNetworks(node)) {
+                removeTrackedEntity(network, entity);
+            }
+        }
+    }
+
+    /**
+     * Checks again which tracked components the entity has, e.g. after one was added or removed.
+     */
+    public void refresh(EntityRef entity, Collection<NetworkNode> entityNodes) {
+        Map<Network, Integer> nodesInNetwork = Maps.newHashMap();
+        for (NetworkNode node : entityNodes) {
+            if (nodeEntities.containsKey(node)) {
+                for (Network network : blockNetwork.getNetworks(node)) {
+                    nodesInNetwork.merge(network, 1, Integer::sum);
+                }
+            }
+        }
+
+        for (Map.Entry<Network, Integer> networkNodes : nodesInNetwork.entrySet()) {
+            for (Class<? extends Component> componentClass : componentClasses) {
+                int count = entity.hasComponent(componentClass) ? networkNodes.getValue() : 0;
+                getTrackedEntities(networkNodes.getKey(), componentClass).setCount(entity, count);
+            }
+        }
+    }
+
+    /**
+     * @return a read only view of the entities in the network with the component, it changes along with the network
+     */
+    public Set<EntityRef> getEntities(Network network, Class<? extends Component> componentClass) {
+        Map<Class<? extends Component>, Multiset<EntityRef>> networkEntities = trackedEntities.get(network);
+        if (networkEntities == null || !networkEntities.containsKey(componentClass)) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(networkEntities.get(componentClass).elementSet());
+    }
+
+    private Multiset<EntityRef> getTrackedEntities(Network network, Class<? extends Component> componentClass) {
+        return trackedEntities.computeIfAbsent(network, k -> Maps.newHashMap()).computeIfAbsent(componentClass, k -> HashMultiset.create());
+    }
+
+    private void addTrackedEntity(Network network, EntityRef entity) {
+        for (Class<? extends Component> componentClass : componentClasses) {
+            if (entity.hasComponent(componentClass)) {
+                getTrackedEntities(network, componentClass).add(entity);
+            }
+        }
+    }
+
+    private void removeTrackedEntity(Network network, EntityRef entity) {
+        Map<Class<? extends Component>, Multiset<EntityRef>> networkEntities = trackedEntities.get(network);
+        if (networkEntities != null) {
+            for (Multiset<EntityRef> entities : networkEntities.values()) {
+                entities.remove(entity);
+            }
+        }
+    }
+
+    @Override
+    public void networkAdded(Network network) {
+    }
+
+    @Override
+    public void networkingNodeAdded(Network network, NetworkNode networkingNode) {
+        if (componentClasses.isEmpty()) {
+            return;
+        }
+        // nodes assigned before anything was tracked are not known yet
+        EntityRef entity = nodeEntities.computeIfAbsent(networkingNode, entityLookup);
+        if (entity != null) {
+            addTrackedEntity(network, entity);
+        }
+    }
+
+    @Override
+    public void networkingNodeRemoved(Network network, NetworkNode networkingNode) {
+        EntityRef entity = nodeEntities.get(networkingNode);
+        if (entity != null) {
+            removeTrackedEntity(network, entity);
+        }
+    }
+
+    @Override
+    public void networkRemoved(Network network) {
+        trackedEntities.remove(network);
+    }
+
+    @Override
+    public void networksMerged(Network source, Network target, Collection<NetworkNode> movedNodes) {
+        Map<Class<? extends Component>, Multiset<EntityRef>> sourceEntities = trackedEntities.remove(source);
+        if (sourceEntities != null) {
+            for (Map.Entry<Class<? extends Component>, Multiset<EntityRef>> entities : sourceEntities.entrySet()) {
+                getTrackedEntities(target, entities.getKey()).addAll(entities.getValue());
+            }
+        }
+    }
+}
@@ -15,7 +15,6 @@
  */
 package org.terasology.fluidTransport.systems;
 
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import org.joml.RoundingMode;
 import org.joml.Vector3f;
@@ -25,6 +24,8 @@ import org.slf4j.LoggerFactory;
 import org.terasology.engine.core.Time;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeRemoveComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnAddedComponent;
 import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
@@ -36,7 +37,6 @@ import org.terasology.engine.registry.In;
 import org.terasology.engine.world.BlockEntityRegistry;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.BlockComponent;
-import org.terasology.entityNetwork.BlockLocationNetworkNode;
 import org.terasology.entityNetwork.Network;
 import org.terasology.entityNetwork.systems.EntityNetworkManager;
 import org.terasology.fluid.component.FluidInventoryComponent;
@@ -50,6 +50,7 @@ import org.terasology.workstation.component.WorkstationComponent;
 import org.terasology.workstation.event.WorkstationStateChanged;
 
 import java.util.Comparator;
+import java.util.Map;
 import java.util.SortedMap;
 
 @RegisterSystem(RegisterMode.AUTHORITY)
@@ -74,9 +75,33 @@ public class FluidTransportAuthoritySystem extends BaseComponentSystem implement
     FluidManager fluidManager;
 
     long nextUpdateTime;
+    // the tanks and pumps of each network, gathered again only once the members of the network change
+    Map<Network, NetworkTanks> networkTanks = Maps.newHashMap();
 
     @Override
     public void initialise() {
+        fluidTransportBlockNetwork.trackComponent(NETWORK_ID, FluidInventoryComponent.class);
+        fluidTransportBlockNetwork.trackComponent(NETWORK_ID, FluidPumpComponent.class);
+    }
+
+    @ReceiveEvent
+    public void tankAdded(OnAddedComponent event, EntityRef entity, FluidInventoryComponent fluidInventoryComponent) {
+        fluidTransportBlockNetwork.refreshTrackedComponents(entity);
+    }
+
+    @ReceiveEvent
+    public void tankRemoved(BeforeRemoveComponent event, EntityRef entity, FluidInventoryComponent fluidInventoryComponent) {
+        fluidTransportBlockNetwork.refreshTrackedComponents(entity);
+    }
+
+    @ReceiveEvent
+    public void pumpAdded(OnAddedComponent event, EntityRef entity, FluidPumpComponent fluidPumpComponent) {
+        fluidTransportBlockNetwork.refreshTrackedComponents(entity);
+    }
+
+    @ReceiveEvent
+    public void pumpRemoved(BeforeRemoveComponent event, EntityRef entity, FluidPumpComponent fluidPumpComponent) {
+        fluidTransportBlockNetwork.refreshTrackedComponents(entity);
     }
 
     @ReceiveEvent
@@ -98,30 +123,18 @@ public class FluidTransportAuthoritySystem extends BaseComponentSystem implement
             // flow in and out of a tank is restricted to a static rate
 
             // distribute all fluid through the network
+            Map<Network, NetworkTanks> updatedNetworkTanks = Maps.newHashMap();
             for (Network network : fluidTransportBlockNetwork.getNetworks(NETWORK_ID)) {
-
-                SortedMap<Integer, EntityRef> tanksFromTopDown = Maps.newTreeMap(new Comparator<Integer>() {
-                    @Override
-                    public int compare(Integer i1, Integer i2) {
-                        // sort descending
-                        return i1.compareTo(i2) * -1;
-                    }
-                });
-
-                SortedMap<Integer, EntityRef> tanksFromBottomUp = Maps.newTreeMap();
-                SortedMap<Integer, EntityRef> pumpsFromBottomUp = Maps.newTreeMap();
-
-
-                // gather the tanks for this network
-                for (BlockLocationNetworkNode node : Iterables.filter(fluidTransportBlockNetwork.getNetworkNodes(network), BlockLocationNetworkNode.class)) {
-                    EntityRef entity = blockEntityRegistry.getExistingEntityAt(node.location);
-                    if (ExtendedFluidManager.isTank(entity)) {
-                        tanksFromBottomUp.put(node.location.y, entity);
-                        tanksFromTopDown.put(node.location.y, entity);
-                    } else if (entity.hasComponent(FluidPumpComponent.class)) {
-                        pumpsFromBottomUp.put(node.location.y, entity);
-                    }
+                long membershipVersion = fluidTransportBlockNetwork.getMembershipVersion(network);
+                NetworkTanks tanks = networkTanks.get(network);
+                if (tanks == null || tanks.membershipVersion != membershipVersion) {
+                    tanks = gatherTanks(network, membershipVersion);
                 }
+                updatedNetworkTanks.put(network, tanks);
+
+                SortedMap<Integer, EntityRef> tanksFromTopDown = tanks.tanksFromTopDown;
+                SortedMap<Integer, EntityRef> tanksFromBottomUp = tanks.tanksFromBottomUp;
+                SortedMap<Integer, EntityRef> pumpsFromBottomUp = tanks.pumpsFromBottomUp;
 
 
                 // let tanks drop their fluid to a tank below
@@ -201,7 +214,23 @@ public class FluidTransportAuthoritySystem extends BaseComponentSystem implement
                     }
                 }
             }
+            networkTanks = updatedNetworkTanks;
+        }
+    }
+
+    private NetworkTanks gatherTanks(Network network, long membershipVersion) {
+        NetworkTanks tanks = new NetworkTanks(membershipVersion);
+        for (EntityRef tank : fluidTransportBlockNetwork.getTrackedEntities(network, FluidInventoryComponent.class)) {
+            int y = getLocation(tank).y;
+            tanks.tanksFromBottomUp.put(y, tank);
+            tanks.tanksFromTopDown.put(y, tank);
+        }
+        for (EntityRef pump : fluidTransportBlockNetwork.getTrackedEntities(network, FluidPumpComponent.class)) {
+            if (!ExtendedFluidManager.isTank(pump)) {
+                tanks.pumpsFromBottomUp.put(getLocation(pump).y, pump);
+            }
         }
+        return tanks;
     }
 
     private float getTankFlowAvailable(EntityRef tank, boolean forInput) {
@@ -244,4 +273,23 @@ public class FluidTransportAuthoritySystem extends BaseComponentSystem implement
         return fluidPumpComponent.maximumFlowRate;
     }
 
+    /**
+     * The tanks and pumps of a network by their elevation.
+     */
+    private static final class NetworkTanks {
+        private final long membershipVersion;
+        private final SortedMap<Integer, EntityRef> tanksFromTopDown = Maps.newTreeMap(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                // sort descending
+                return i1.compareTo(i2) * -1;
+            }
+        });
+        private final SortedMap<Integer, EntityRef> tanksFromBottomUp = Maps.newTreeMap();
+        private final SortedMap<Integer, EntityRef> pumpsFromBottomUp = Maps.newTreeMap();
+
+        private NetworkTanks(long membershipVersion) {
+            this.membershipVersion = membershipVersion;
+        }
+    }
 }
@@ -15,12 +15,13 @@
  */
 package org.terasology.mechanicalPower.systems;
 
-import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.engine.core.Time;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeRemoveComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnAddedComponent;
 import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
@@ -29,7 +30,6 @@ import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.entityNetwork.Network;
-import org.terasology.entityNetwork.NetworkNode;
 import org.terasology.entityNetwork.systems.EntityNetworkManager;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 import org.terasology.math.TeraMath;
@@ -38,7 +38,7 @@ import org.terasology.potentialEnergyDevices.components.PotentialEnergyDeviceCom
 import org.terasology.workstation.component.WorkstationComponent;
 import org.terasology.workstation.event.WorkstationStateChanged;
 
-import java.util.Set;
+import java.util.Collection;
 
 @RegisterSystem(RegisterMode.AUTHORITY)
 public class MechanicalPowerAuthoritySystem extends BaseComponentSystem implements UpdateSubscriberSystem {
@@ -59,6 +59,8 @@ public class MechanicalPowerAuthoritySystem extends BaseComponentSystem implemen
 
     @Override
     public void initialise() {
+        mechanicalPowerBlockNetwork.trackComponent(NETWORK_ID, PotentialEnergyDeviceComponent.class);
+        mechanicalPowerBlockNetwork.trackComponent(NETWORK_ID, MechanicalPowerProducerComponent.class);
     }
 
     @Override
@@ -71,41 +73,50 @@ public class MechanicalPowerAuthoritySystem extends BaseComponentSystem implemen
             // add all power distributed through the network
             for (Network network : mechanicalPowerBlockNetwork.getNetworks(NETWORK_ID)) {
 
-                Set<EntityRef> consumers = Sets.newHashSet();
-                Set<EntityRef> producers = Sets.newHashSet();
-                // gather the consumers and producers for this network
-                for (NetworkNode node : mechanicalPowerBlockNetwork.getNetworkNodes(network)) {
-                    EntityRef entity = mechanicalPowerBlockNetwork.getEntityForNode(node);
-                    if (entity.hasComponent(PotentialEnergyDeviceComponent.class)) {
-                        consumers.add(entity);
-                    }
-                    if (entity.hasComponent(MechanicalPowerProducerComponent.class)) {
-                        producers.add(entity);
-                    }
-                }
-
                 float totalPower = 0;
-                for (EntityRef producerEntity : producers) {
+                for (EntityRef producerEntity : mechanicalPowerBlockNetwork.getTrackedEntities(network, MechanicalPowerProducerComponent.class)) {
                     MechanicalPowerProducerComponent producer = producerEntity.getComponent(MechanicalPowerProducerComponent.class);
                     if (producer.active) {
                         totalPower += producer.power;
                     }
                 }
 
+                Collection<EntityRef> consumers = mechanicalPowerBlockNetwork.getTrackedEntities(network, PotentialEnergyDeviceComponent.class);
                 if (totalPower > 0 && consumers.size() > 0) {
                     float powerToEachConsumer = totalPower / consumers.size();
-                    for (EntityRef consumerEntity : consumers) {
+                    // saving the components can change the network, so do not hold on to the view while doing so
+                    mechanicalPowerBlockNetwork.forEachTrackedEntity(network, PotentialEnergyDeviceComponent.class, consumerEntity -> {
                         PotentialEnergyDeviceComponent deviceComponent = consumerEntity.getComponent(PotentialEnergyDeviceComponent.class);
                         if (deviceComponent.currentStoredEnergy < deviceComponent.maximumStoredEnergy) {
                             deviceComponent.currentStoredEnergy = TeraMath.clamp(deviceComponent.currentStoredEnergy + powerToEachConsumer, 0, deviceComponent.maximumStoredEnergy);
                             consumerEntity.saveComponent(deviceComponent);
                         }
-                    }
+                    });
                 }
             }
         }
     }
 
+    @ReceiveEvent
+    public void consumerAdded(OnAddedComponent event, EntityRef entity, PotentialEnergyDeviceComponent potentialEnergyDeviceComponent) {
+        mechanicalPowerBlockNetwork.refreshTrackedComponents(entity);
+    }
+
+    @ReceiveEvent
+    public void consumerRemoved(BeforeRemoveComponent event, EntityRef entity, PotentialEnergyDeviceComponent potentialEnergyDeviceComponent) {
+        mechanicalPowerBlockNetwork.refreshTrackedComponents(entity);
+    }
+
+    @ReceiveEvent
+    public void producerAdded(OnAddedComponent event, EntityRef entity, MechanicalPowerProducerComponent producer) {
+        mechanicalPowerBlockNetwork.refreshTrackedComponents(entity);
+    }
+
+    @ReceiveEvent
+    public void producerRemoved(BeforeRemoveComponent event, EntityRef entity, MechanicalPowerProducerComponent producer) {
+        mechanicalPowerBlockNetwork.refreshTrackedComponents(entity);
+    }
+
     @ReceiveEvent
     public void powerChangedInMachine(OnChangedComponent event, EntityRef workstation,
                                       WorkstationComponent workstationComponent,
@@ -2,11 +2,14 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.mechanicalPower.systems;
 
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.terasology.engine.core.Time;
 import org.terasology.engine.entitySystem.entity.EntityBuilder;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeRemoveComponent;
 import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnAddedComponent;
 import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
@@ -32,6 +35,9 @@ import org.terasology.module.inventory.ui.GetItemTooltip;
 import org.terasology.nui.widgets.TooltipLine;
 import org.terasology.potentialEnergyDevices.components.PotentialEnergyDeviceComponent;
 
+import java.util.Map;
+import java.util.Set;
+
 @RegisterSystem(RegisterMode.CLIENT)
 public class MechanicalPowerClientSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
     static final float POWERFOR1RPS = 6.0f;
@@ -46,14 +52,41 @@ public class MechanicalPowerClientSystem extends BaseComponentSystem implements
     Time time;
 
     long nextUpdateTime;
+    // the membership version of each network and the speed of its axles when they were last updated
+    Map<Network, Long> updatedMembershipVersions = Maps.newHashMap();
+    Map<Network, Float> updatedSpeeds = Maps.newHashMap();
+    // networks whose axles changed without their membership changing, e.g. because an axle got a new rendered entity
+    Set<Network> dirtyNetworks = Sets.newHashSet();
+
+    @Override
+    public void initialise() {
+        mechanicalPowerBlockNetwork.trackComponent(MechanicalPowerAuthoritySystem.NETWORK_ID, PotentialEnergyDeviceComponent.class);
+        mechanicalPowerBlockNetwork.trackComponent(MechanicalPowerAuthoritySystem.NETWORK_ID, MechanicalPowerProducerComponent.class);
+        mechanicalPowerBlockNetwork.trackComponent(MechanicalPowerAuthoritySystem.NETWORK_ID, RotatingAxleComponent.class);
+    }
 
     @Override
     public void update(float delta) {
         long currentTime = time.getGameTimeInMs();
         if (currentTime > nextUpdateTime) {
-            for (Network network : mechanicalPowerBlockNetwork.getNetworks(MechanicalPowerAuthoritySystem.NETWORK_ID)) {
-                updateAxlesInNetwork(network);
-            }
+            // the speed is worked out from the few producers and consumers, the axles are only gone through once their
+            // speed, their membership or one of them changed
+            Map<Network, Long> membershipVersions = Maps.newHashMap();
+            Map<Network, Float> speeds = Maps.newHashMap();
+            mechanicalPowerBlockNetwork.forEachNetwork(MechanicalPowerAuthoritySystem.NETWORK_ID, network -> {
+                long membershipVersion = mechanicalPowerBlockNetwork.getMembershipVersion(network);
+                float speed = getAxleSpeed(network);
+                if (dirtyNetworks.contains(network)
+                        || !Long.valueOf(membershipVersion).equals(updatedMembershipVersions.get(network))
+                        || !Float.valueOf(speed).equals(updatedSpeeds.get(network))) {
+                    updateAxlesInNetwork(network, speed);
+                }
+                membershipVersions.put(network, membershipVersion);
+                speeds.put(network, speed);
+            });
+            updatedMembershipVersions = membershipVersions;
+            updatedSpeeds = speeds;
+            dirtyNetworks.clear();
             nextUpdateTime = currentTime + 1000;
         }
     }
@@ -95,49 +128,94 @@ public class MechanicalPowerClientSystem extends BaseComponentSystem implements
         }
     }
 
+    @ReceiveEvent
+    public void axleAdded(OnAddedComponent event, EntityRef entity, RotatingAxleComponent rotatingAxle) {
+        mechanicalPowerBlockNetwork.refreshTrackedComponents(entity);
+        markNetworksDirty(entity);
+    }
+
+    /**
+     * The rendered entity of an axle is replaced by saving the axle, which does not change the membership of its network.
+     */
+    @ReceiveEvent
+    public void axleChanged(OnChangedComponent event, EntityRef entity, RotatingAxleComponent rotatingAxle) {
+        markNetworksDirty(entity);
+    }
+
+    @ReceiveEvent
+    public void axleRemoved(BeforeRemoveComponent event, EntityRef entity, RotatingAxleComponent rotatingAxle) {
+        mechanicalPowerBlockNetwork.refreshTrackedComponents(entity);
+    }
+
+    @ReceiveEvent
+    public void consumerAdded(OnAddedComponent event, EntityRef entity, PotentialEnergyDeviceComponent potentialEnergyDeviceComponent) {
+        mechanicalPowerBlockNetwork.refreshTrackedComponents(entity);
+    }
+
+    @ReceiveEvent
+    public void consumerRemoved(BeforeRemoveComponent event, EntityRef entity, PotentialEnergyDeviceComponent potentialEnergyDeviceComponent) {
+        mechanicalPowerBlockNetwork.refreshTrackedComponents(entity);
+    }
+
+    @ReceiveEvent
+    public void producerAdded(OnAddedComponent event, EntityRef entity, MechanicalPowerProducerComponent producer) {
+        mechanicalPowerBlockNetwork.refreshTrackedComponents(entity);
+    }
+
+    @ReceiveEvent
+    public void producerRemoved(BeforeRemoveComponent event, EntityRef entity, MechanicalPowerProducerComponent producer) {
+        mechanicalPowerBlockNetwork.refreshTrackedComponents(entity);
+    }
+
     @ReceiveEvent
     public void updateAxlesInNetwork(OnChangedComponent event, EntityRef entity, MechanicalPowerProducerComponent powerProducer, BlockComponent block) {
         for (NetworkNode node : mechanicalPowerBlockNetwork.getNodesForEntity(entity)) {
-            for (Network network : mechanicalPowerBlockNetwork.getNetworks(node)) {
-                updateAxlesInNetwork(network);
-            }
+            mechanicalPowerBlockNetwork.forEachNetwork(node, this::updateAxlesInNetwork);
+        }
+    }
+
+    private void markNetworksDirty(EntityRef entity) {
+        for (NetworkNode node : mechanicalPowerBlockNetwork.getNodesForEntity(entity)) {
+            mechanicalPowerBlockNetwork.forEachNetwork(node, dirtyNetworks::add);
         }
     }
 
     private void updateAxlesInNetwork(Network network) {
         if (network != null) {
-            float totalPower = 0f;
-            int totalConsumers = 0;
-
-            for (NetworkNode node : mechanicalPowerBlockNetwork.getNetworkNodes(network)) {
-                EntityRef nodeEntity = mechanicalPowerBlockNetwork.getEntityForNode(node);
-                MechanicalPowerProducerComponent producer = nodeEntity.getComponent(MechanicalPowerProducerComponent.class);
-                if (producer != null) {
-                    totalPower += producer.active ? producer.power : 0f;
-                }
-                PotentialEnergyDeviceComponent potentialEnergyDeviceComponent = nodeEntity.getComponent(PotentialEnergyDeviceComponent.class);
-                if (potentialEnergyDeviceComponent != null) {
-                    totalConsumers++;
-                }
+            updateAxlesInNetwork(network, getAxleSpeed(network));
+        }
+    }
 
-            }
+    /**
+     * @return the rotations per second of the axles in the network, infinite if it has no power
+     */
+    private float getAxleSpeed(Network network) {
+        float totalPower = 0f;
+        for (EntityRef producerEntity : mechanicalPowerBlockNetwork.getTrackedEntities(network, MechanicalPowerProducerComponent.class)) {
+            MechanicalPowerProducerComponent producer = producerEntity.getComponent(MechanicalPowerProducerComponent.class);
+            totalPower += producer.active ? producer.power : 0f;
+        }
+        int totalConsumers = mechanicalPowerBlockNetwork.getTrackedEntities(network, PotentialEnergyDeviceComponent.class).size();
 
-            float speed = 1 / (totalPower / (totalConsumers + 1) / POWERFOR1RPS);
-            for (NetworkNode node : mechanicalPowerBlockNetwork.getNetworkNodes(network)) {
-                EntityRef nodeEntity = mechanicalPowerBlockNetwork.getEntityForNode(node);
-
-                RotatingAxleComponent rotatingAxle = nodeEntity.getComponent(RotatingAxleComponent.class);
-                if (rotatingAxle != null && rotatingAxle.renderedEntity != null) {
-                    if (totalPower > 0) {
-                        // ensure all axle rotation is turned on
-                        turnAxleOn(rotatingAxle.renderedEntity, speed);
-                    } else {
-                        // ensure all axle rotation is turned off
-                        turnAxleOff(rotatingAxle.renderedEntity);
-                    }
+        return 1 / (totalPower / (totalConsumers + 1) / POWERFOR1RPS);
+    }
+
+    private void updateAxlesInNetwork(Network network, float speed) {
+        updatedMembershipVersions.put(network, mechanicalPowerBlockNetwork.getMembershipVersion(network));
+        updatedSpeeds.put(network, speed);
+        boolean powered = speed > 0 && !Float.isInfinite(speed);
+        mechanicalPowerBlockNetwork.forEachTrackedEntity(network, RotatingAxleComponent.class, axleEntity -> {
+            RotatingAxleComponent rotatingAxle = axleEntity.getComponent(RotatingAxleComponent.class);
+            if (rotatingAxle.renderedEntity != null) {
+                if (powered) {
+                    // ensure all axle rotation is turned on
+                    turnAxleOn(rotatingAxle.renderedEntity, speed);
+                } else {
+                    // ensure all axle rotation is turned off
+                    turnAxleOff(rotatingAxle.renderedEntity);
                 }
             }
-        }
+        });
     }
 
     private void turnAxleOn(EntityRef renderedEntity, float speed) {
@@ -25,6 +25,7 @@ import java.util.function.BiPredicate;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SidedLocationNetworkNodeTest {
@@ -54,6 +55,22 @@ public class SidedLocationNetworkNodeTest {
         assertEquals(Side.BOTTOM, top.connectionSide(bottom));
     }
 
+    @Test
+    public void connectsOnlyOnTheSidesFacingEachOther() {
+        for (Side side : Side.values()) {
+            Vector3i neighbourLocation = new Vector3i(side.direction());
+            SidedBlockLocationNetworkNode center = new SidedBlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, 0), side);
+            SidedBlockLocationNetworkNode neighbour = new SidedBlockLocationNetworkNode(NETWORK_ID, false, neighbourLocation, side.reverse());
+            SidedBlockLocationNetworkNode turnedAway = new SidedBlockLocationNetworkNode(NETWORK_ID, false, neighbourLocation, side);
+
+            assertEquals(side, center.connectionSide(neighbour));
+            assertEquals(side.reverse(), neighbour.connectionSide(center));
+            assertTrue(center.isConnectedTo(neighbour));
+            assertTrue(neighbour.isConnectedTo(center));
+            assertFalse(center.isConnectedTo(turnedAway));
+        }
+    }
+
     @Test
     public void isConnectedToSpecificSides() {
         SidedBlockLocationNetworkNode bottom = new SidedBlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, 0), SideBitFlag.getSide(Side.TOP));
@@ -91,11 +108,32 @@ public class SidedLocationNetworkNodeTest {
         SidedBlockLocationNetworkNode side = new SidedBlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, 1), allDirections);
         SidedBlockLocationNetworkNode top = new SidedBlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 1, 0), SideBitFlag.getSide(Side.BOTTOM));
 
-        BiPredicate<NetworkNode, NetworkNode> filter = SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.TOP, bottom.location);
+        BiPredicate<NetworkNode, NetworkNode> filter = SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.TOP, bottom.location());
         assertTrue(filter.test(top, bottom));
 
-        filter = SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.TOP, bottom.location);
+        filter = SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.TOP, bottom.location());
         assertFalse(filter.test(side, bottom));
     }
 
+    @Test
+    public void equalityIsSymmetricBetweenNodeTypes() {
+        BlockLocationNetworkNode plain = new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, 0));
+        SidedBlockLocationNetworkNode sided = new SidedBlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, 0), allDirections);
+
+        assertNotEquals(plain, sided);
+        assertNotEquals(sided, plain);
+    }
+
+    @Test
+    public void nodesDoNotShareTheirLocation() {
+        Vector3i location = new Vector3i(0, 0, 0);
+        SidedBlockLocationNetworkNode node = new SidedBlockLocationNetworkNode(NETWORK_ID, false, location, allDirections);
+        SidedBlockLocationNetworkNode same = new SidedBlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, 0), allDirections);
+        int hash = node.hashCode();
+        location.set(5, 5, 5);
+
+        assertEquals(same, node);
+        assertEquals(hash, node.hashCode());
+        assertEquals(same.hashCode(), node.hashCode());
+    }
 }
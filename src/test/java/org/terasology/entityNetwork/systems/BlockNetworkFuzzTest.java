@@ -0,0 +1,344 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.entityNetwork.systems;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+import org.terasology.entityNetwork.BlockLocationNetworkNode;
+import org.terasology.entityNetwork.Network;
+import org.terasology.entityNetwork.NetworkNode;
+import org.terasology.entityNetwork.SidedBlockLocationNetworkNode;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Applies long random sequences of changes to a {@link BlockNetwork} and compares the result after every step with a
+ * simple reference, which works out all connections and networks from scratch.  The networks are also rebuilt from the
+ * events the listeners get, to make sure those add up to the same thing.
+ * <p>
+ * A failing sequence is shrunk to the fewest steps that still fail, and the failure message lists them as code that can
+ * be pasted into a test.
+ */
+public class BlockNetworkFuzzTest {
+    static final String NETWORK_ID = "test";
+    private static final int SEEDS = 40;
+    private static final int STEPS = 200;
+
+    @Test
+    public void randomChangesMatchReference() {
+        for (long seed = 0; seed < SEEDS; seed++) {
+            List<Step> steps = randomSteps(new Random(seed));
+            if (run(steps) != null) {
+                List<Step> minimalSteps = shrink(steps);
+                StringBuilder message = new StringBuilder("Seed " + seed + ": " + run(minimalSteps) + "\n");
+                boolean queuedChanges = false;
+                for (Step step : minimalSteps) {
+                    boolean queued = step.type == StepType.QUEUE_ADD || step.type == StepType.QUEUE_REMOVE;
+                    if (queuedChanges && !queued) {
+                        message.append("blockNetwork.applyQueuedChanges();\n");
+                    }
+                    queuedChanges = queued;
+                    message.append(step).append('\n');
+                }
+                if (queuedChanges) {
+                    message.append("blockNetwork.applyQueuedChanges();\n");
+                }
+                fail(message.toString());
+            }
+        }
+    }
+
+    private static List<Step> randomSteps(Random random) {
+        int size = 3 + random.nextInt(3);
+        List<Step> steps = Lists.newArrayList();
+        List<NetworkNode> usedNodes = Lists.newArrayList();
+        for (int i = 0; i < STEPS; i++) {
+            StepType type = StepType.values()[random.nextInt(StepType.values().length)];
+            boolean removal = type == StepType.REMOVE || type == StepType.QUEUE_REMOVE;
+            NetworkNode node;
+            if (removal && !usedNodes.isEmpty()) {
+                // nodes that are not there are skipped, so any node that was used before will do
+                node = usedNodes.get(random.nextInt(usedNodes.size()));
+            } else {
+                node = randomNode(random, size);
+                usedNodes.add(node);
+            }
+            steps.add(new Step(type, node));
+        }
+        return steps;
+    }
+
+    private static NetworkNode randomNode(Random random, int size) {
+        Vector3i location = new Vector3i(random.nextInt(size), random.nextInt(size), random.nextInt(size));
+        boolean isLeaf = random.nextInt(5) == 0;
+        switch (random.nextInt(3)) {
+            case 0:
+                return new SidedBlockLocationNetworkNode(NETWORK_ID, isLeaf, location, (byte) random.nextInt(64));
+            case 1:
+                return new BlockLocationNetworkNode(NETWORK_ID, isLeaf, 1 + random.nextInt(2), location);
+            default:
+                return new BlockLocationNetworkNode(NETWORK_ID, isLeaf, location);
+        }
+    }
+
+    /**
+     * Steps that make no sense where they are, like removing a node that is not there, are skipped.  That way every part of
+     * a sequence is a sequence of its own, which is what makes shrinking possible.
+     *
+     * @return why the steps failed, or null if they did not
+     */
+    private static String run(List<Step> steps) {
+        BlockNetwork blockNetwork = new BlockNetwork();
+        MirroringListener listener = new MirroringListener();
+        blockNetwork.addTopologyListener(listener);
+        // the nodes the network has once the queued changes are applied
+        Set<NetworkNode> nodes = Sets.newHashSet();
+
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            boolean removal = step.type == StepType.REMOVE || step.type == StepType.QUEUE_REMOVE;
+            if (removal ? !nodes.contains(step.node) : nodes.contains(step.node) || hasNodeAt(nodes, step.node)) {
+                continue;
+            }
+            try {
+                switch (step.type) {
+                    case ADD:
+                        blockNetwork.applyQueuedChanges();
+                        blockNetwork.addNetworkingBlock(step.node);
+                        break;
+                    case REMOVE:
+                        blockNetwork.applyQueuedChanges();
+                        blockNetwork.removeNetworkingBlock(step.node);
+                        break;
+                    case QUEUE_ADD:
+                        blockNetwork.queueAddNetworkingBlock(step.node);
+                        break;
+                    case QUEUE_REMOVE:
+                        blockNetwork.queueRemoveNetworkingBlock(step.node);
+                        break;
+                }
+                if (removal) {
+                    nodes.remove(step.node);
+                } else {
+                    nodes.add(step.node);
+                }
+                if (step.type == StepType.ADD || step.type == StepType.REMOVE) {
+                    String failure = compare(blockNetwork, listener, nodes);
+                    if (failure != null) {
+                        return "step " + i + ", " + failure;
+                    }
+                }
+            } catch (RuntimeException | AssertionError e) {
+                return "step " + i + ", " + e;
+            }
+        }
+        blockNetwork.applyQueuedChanges();
+        String failure = compare(blockNetwork, listener, nodes);
+        return failure != null ? "after the last step, " + failure : null;
+    }
+
+    /**
+     * Only one node can be at a location, like only one block can.
+     */
+    private static boolean hasNodeAt(Set<NetworkNode> nodes, NetworkNode node) {
+        for (NetworkNode existingNode : nodes) {
+            if (((BlockLocationNetworkNode) existingNode).isAt(((BlockLocationNetworkNode) node).location())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String compare(BlockNetwork blockNetwork, MirroringListener listener, Set<NetworkNode> nodes) {
+        Map<NetworkNode, Set<NetworkNode>> expectedAdjacentNodes = findAdjacentNodes(nodes);
+        for (NetworkNode node : nodes) {
+            Set<NetworkNode> adjacentNodes = Sets.newHashSet(blockNetwork.getAdjacentNodes(node));
+            if (!adjacentNodes.equals(expectedAdjacentNodes.get(node))) {
+                return "node " + node + " is connected to " + adjacentNodes + " instead of " + expectedAdjacentNodes.get(node);
+            }
+        }
+        if (blockNetwork.getNetworkSize() != nodes.size()) {
+            return "there are " + blockNetwork.getNetworkSize() + " nodes instead of " + nodes.size();
+        }
+
+        Set<Set<NetworkNode>> networks = Sets.newHashSet();
+        for (Network network : blockNetwork.getNetworks()) {
+            networks.add(Sets.newHashSet(blockNetwork.getNetworkNodes(network)));
+            for (NetworkNode node : blockNetwork.getNetworkNodes(network)) {
+                if (!blockNetwork.getNetworks(node).contains(network)) {
+                    return "node " + node + " does not know it is part of network " + blockNetwork.getNetworkNodes(network);
+                }
+            }
+        }
+        Set<Set<NetworkNode>> expectedNetworks = findNetworks(nodes, expectedAdjacentNodes);
+        if (networks.size() != blockNetwork.getNetworks().size() || !networks.equals(expectedNetworks)) {
+            return "the networks are " + networks + " instead of " + expectedNetworks;
+        }
+
+        if (!listener.networks.keySet().equals(Sets.newHashSet(blockNetwork.getNetworks()))) {
+            return "the listener knows about " + listener.networks.size() + " networks instead of " + blockNetwork.getNetworks().size();
+        }
+        for (Network network : blockNetwork.getNetworks()) {
+            if (!listener.networks.get(network).equals(Sets.newHashSet(blockNetwork.getNetworkNodes(network)))) {
+                return "the listener thinks network " + blockNetwork.getNetworkNodes(network) + " has the nodes " + listener.networks.get(network);
+            }
+        }
+        return null;
+    }
+
+    private static Map<NetworkNode, Set<NetworkNode>> findAdjacentNodes(Set<NetworkNode> nodes) {
+        Map<NetworkNode, Set<NetworkNode>> adjacentNodes = Maps.newHashMap();
+        for (NetworkNode node : nodes) {
+            Set<NetworkNode> connectedNodes = Sets.newHashSet();
+            for (NetworkNode otherNode : nodes) {
+                if (!node.equals(otherNode) && node.isConnectedTo(otherNode) && otherNode.isConnectedTo(node)) {
+                    connectedNodes.add(otherNode);
+                }
+            }
+            adjacentNodes.put(node, connectedNodes);
+        }
+        return adjacentNodes;
+    }
+
+    /**
+     * Non leaf nodes that are connected through other non leaf nodes form a network, together with the leaf nodes next to
+     * them.  Two leaf nodes next to each other form a network of their own, and a leaf node without neighbors is alone.
+     */
+    private static Set<Set<NetworkNode>> findNetworks(Set<NetworkNode> nodes, Map<NetworkNode, Set<NetworkNode>> adjacentNodes) {
+        Set<Set<NetworkNode>> networks = Sets.newHashSet();
+        Set<NetworkNode> visitedNodes = Sets.newHashSet();
+        for (NetworkNode node : nodes) {
+            if (node.isLeaf()) {
+                if (adjacentNodes.get(node).isEmpty()) {
+                    networks.add(Sets.newHashSet(node));
+                }
+                for (NetworkNode adjacentNode : adjacentNodes.get(node)) {
+                    if (adjacentNode.isLeaf()) {
+                        networks.add(Sets.newHashSet(node, adjacentNode));
+                    }
+                }
+            } else if (visitedNodes.add(node)) {
+                Set<NetworkNode> network = Sets.newHashSet(node);
+                List<NetworkNode> nodesToVisit = Lists.newArrayList(node);
+                while (!nodesToVisit.isEmpty()) {
+                    for (NetworkNode adjacentNode : adjacentNodes.get(nodesToVisit.remove(nodesToVisit.size() - 1))) {
+                        if (adjacentNode.isLeaf()) {
+                            network.add(adjacentNode);
+                        } else if (visitedNodes.add(adjacentNode)) {
+                            network.add(adjacentNode);
+                            nodesToVisit.add(adjacentNode);
+                        }
+                    }
+                }
+                networks.add(network);
+            }
+        }
+        return networks;
+    }
+
+    /**
+     * Leaves out ever smaller chunks of the steps for as long as the rest still fails.
+     */
+    private static List<Step> shrink(List<Step> steps) {
+        List<Step> failingSteps = Lists.newArrayList(steps);
+        for (int chunkSize = failingSteps.size() / 2; chunkSize >= 1; chunkSize /= 2) {
+            boolean shrunk;
+            do {
+                shrunk = false;
+                for (int start = 0; start < failingSteps.size(); start += chunkSize) {
+                    List<Step> candidate = Lists.newArrayList(failingSteps.subList(0, start));
+                    candidate.addAll(failingSteps.subList(Math.min(start + chunkSize, failingSteps.size()), failingSteps.size()));
+                    if (run(candidate) != null) {
+                        failingSteps = candidate;
+                        shrunk = true;
+                        start -= chunkSize;
+                    }
+                }
+            } while (shrunk);
+        }
+        return failingSteps;
+    }
+
+    private enum StepType {
+        ADD("addNetworkingBlock"),
+        REMOVE("removeNetworkingBlock"),
+        QUEUE_ADD("queueAddNetworkingBlock"),
+        QUEUE_REMOVE("queueRemoveNetworkingBlock");
+
+        private final String methodName;
+
+        StepType(String methodName) {
+            this.methodName = methodName;
+        }
+    }
+
+    private static final class Step {
+        private final StepType type;
+        private final NetworkNode node;
+
+        Step(StepType type, NetworkNode node) {
+            this.type = type;
+            this.node = node;
+        }
+
+        @Override
+        public String toString() {
+            BlockLocationNetworkNode locationNode = (BlockLocationNetworkNode) node;
+            String location = "new Vector3i(" + locationNode.x() + ", " + locationNode.y() + ", "
+                    + locationNode.z() + ")";
+            String newNode;
+            if (node instanceof SidedBlockLocationNetworkNode) {
+                newNode = "new SidedBlockLocationNetworkNode(NETWORK_ID, " + node.isLeaf() + ", " + location + ", (byte) "
+                        + ((SidedBlockLocationNetworkNode) node).connectionSides + ")";
+            } else {
+                newNode = "new BlockLocationNetworkNode(NETWORK_ID, " + node.isLeaf() + ", "
+                        + locationNode.getMaximumGridDistance() + ", " + location + ")";
+            }
+            return "blockNetwork." + type.methodName + "(" + newNode + ");";
+        }
+    }
+
+    /**
+     * Keeps its own copy of the networks, only from what it is told, and fails on events that do not fit.
+     */
+    private static final class MirroringListener implements NetworkTopologyListener {
+        private final Map<Network, Set<NetworkNode>> networks = Maps.newHashMap();
+
+        @Override
+        public void networkAdded(Network network) {
+            if (networks.put(network, Sets.newHashSet()) != null) {
+                throw new AssertionError("network added twice");
+            }
+        }
+
+        @Override
+        public void networkingNodeAdded(Network network, NetworkNode networkingNode) {
+            if (!networks.containsKey(network) || !networks.get(network).add(networkingNode)) {
+                throw new AssertionError("node " + networkingNode + " added to a network it can not be added to");
+            }
+        }
+
+        @Override
+        public void networkingNodeRemoved(Network network, NetworkNode networkingNode) {
+            if (!networks.containsKey(network) || !networks.get(network).remove(networkingNode)) {
+                throw new AssertionError("node " + networkingNode + " removed from a network it is not part of");
+            }
+        }
+
+        @Override
+        public void networkRemoved(Network network) {
+            Set<NetworkNode> remainingNodes = networks.remove(network);
+            if (remainingNodes == null || !remainingNodes.isEmpty()) {
+                throw new AssertionError("network removed while it is unknown or still has nodes");
+            }
+        }
+    }
+}
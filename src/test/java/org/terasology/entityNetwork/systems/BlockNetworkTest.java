@@ -1,6 +1,7 @@
 package org.terasology.entityNetwork.systems;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.joml.Vector3i;
@@ -8,15 +9,25 @@ import org.joml.Vector3ic;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.terasology.engine.math.Side;
+import org.terasology.engine.world.block.BlockRegion;
 import org.terasology.entityNetwork.BlockLocationNetworkNode;
 import org.terasology.entityNetwork.Network;
 import org.terasology.entityNetwork.NetworkNode;
 import org.terasology.entityNetwork.SidedBlockLocationNetworkNode;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -103,6 +114,26 @@ public class BlockNetworkTest {
         assertEquals(1, listener.networksRemoved);
     }
 
+    @Test
+    public void networksOfNodeFollowMergesAndSplits() {
+        SidedBlockLocationNetworkNode front = toNode(new Vector3i(0, 0, 1), allDirections);
+        SidedBlockLocationNetworkNode back = toNode(new Vector3i(0, 0, -1), allDirections);
+        blockNetwork.addNetworkingBlock(front);
+        blockNetwork.addNetworkingBlock(back);
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, 0), allDirections));
+        assertEquals(blockNetwork.getNetworks(front), blockNetwork.getNetworks(back));
+
+        blockNetwork.removeNetworkingBlock(toNode(new Vector3i(0, 0, 0), allDirections));
+        assertEquals(1, blockNetwork.getNetworks(front).size());
+        assertEquals(1, blockNetwork.getNetworks(back).size());
+        assertNotEquals(blockNetwork.getNetworks(front), blockNetwork.getNetworks(back));
+        for (Network network : blockNetwork.getNetworks()) {
+            for (NetworkNode node : blockNetwork.getNetworkNodes(network)) {
+                assertTrue(blockNetwork.getNetworks(node).contains(network));
+            }
+        }
+    }
+
     @Test
     public void addTwoOverlappingCrossingNetworkingNodes() {
         Vector3i location = new Vector3i(0, 0, 0);
@@ -141,6 +172,74 @@ public class BlockNetworkTest {
         assertEquals(4, blockNetwork.getDistance(leftRight, frontBack));
     }
 
+    @Test
+    public void cachedPathsFollowTopologyChanges() {
+        SidedBlockLocationNetworkNode start = toNode(new Vector3i(0, 0, 0), allDirections);
+        SidedBlockLocationNetworkNode end = toNode(new Vector3i(2, 0, 0), allDirections);
+        blockNetwork.addNetworkingBlock(start);
+        blockNetwork.addNetworkingBlock(end);
+        for (Vector3i location : new Vector3i[]{new Vector3i(0, 0, 1), new Vector3i(0, 0, 2), new Vector3i(1, 0, 2), new Vector3i(2, 0, 2), new Vector3i(2, 0, 1)}) {
+            blockNetwork.addNetworkingBlock(toNode(location, allDirections));
+        }
+
+        assertEquals(6, blockNetwork.getDistance(start, end));
+        assertFalse(blockNetwork.isInDistance(5, start, end));
+
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(1, 0, 0), allDirections));
+        assertEquals(2, blockNetwork.getDistance(start, end));
+        assertTrue(blockNetwork.isInDistance(2, start, end));
+
+        blockNetwork.removeNetworkingBlock(toNode(new Vector3i(1, 0, 0), allDirections));
+        blockNetwork.removeNetworkingBlock(toNode(new Vector3i(0, 0, 2), allDirections));
+        assertEquals(0, blockNetwork.getDistance(start, end));
+        assertFalse(blockNetwork.isInDistance(100, start, end));
+    }
+
+    @Test
+    public void distanceFieldsMeasureFromTheNearestSource() {
+        for (int z = 0; z < 7; z++) {
+            blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, z), allDirections));
+        }
+        Network network = blockNetwork.getNetworks().iterator().next();
+        Predicate<NetworkNode> ends = node -> ((BlockLocationNetworkNode) node).z() % 6 == 0;
+
+        NetworkDistanceField field = blockNetwork.computeDistanceField(network, ends);
+        assertEquals(7, field.size());
+        assertEquals(0, field.getDistance(toNode(new Vector3i(0, 0, 6), allDirections)));
+        assertEquals(2, field.getDistance(toNode(new Vector3i(0, 0, 2), allDirections)));
+        assertEquals(3, field.getDistance(toNode(new Vector3i(0, 0, 3), allDirections)));
+        assertEquals(NetworkDistanceField.UNREACHABLE, field.getDistance(toNode(new Vector3i(1, 0, 3), allDirections)));
+        assertSame(field, blockNetwork.computeDistanceField(network, ends));
+
+        blockNetwork.removeNetworkingBlock(toNode(new Vector3i(0, 0, 0), allDirections));
+        field = blockNetwork.computeDistanceField(network, ends);
+        assertEquals(6, field.size());
+        assertEquals(5, field.getDistance(toNode(new Vector3i(0, 0, 1), allDirections)));
+    }
+
+    @Test
+    public void distanceFieldsFollowTheSourcesWhenWhatNodesStandForChanges() {
+        for (int z = 0; z <= 4; z++) {
+            blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, z), allDirections));
+        }
+        Network network = blockNetwork.getNetworks().iterator().next();
+        NetworkNode first = toNode(new Vector3i(0, 0, 0), allDirections);
+        NetworkNode last = toNode(new Vector3i(0, 0, 4), allDirections);
+        // stands in for the nodes whose entities have a producer component
+        Set<NetworkNode> producers = Sets.newHashSet(first);
+        Predicate<NetworkNode> sources = producers::contains;
+
+        assertEquals(4, blockNetwork.computeDistanceField(network, sources).getDistance(last));
+
+        producers.remove(first);
+        blockNetwork.membershipChanged(first);
+        producers.add(last);
+        blockNetwork.membershipChanged(last);
+        NetworkDistanceField field = blockNetwork.computeDistanceField(network, sources);
+        assertEquals(0, field.getDistance(last));
+        assertEquals(4, field.getDistance(first));
+    }
+
     @Test
     public void nodesAgreeAboutConnectivity() {
         blockNetwork.addNetworkingBlock(new SidedBlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, 0), Side.TOP));
@@ -170,6 +269,51 @@ public class BlockNetworkTest {
         assertEquals(2, blockNetwork.getNetworks().size());
     }
 
+    @Test
+    public void leafNodesDoNotJoinExistingNetworks() {
+        blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, 0)));
+        blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 2, 0)));
+        BlockLocationNetworkNode leaf = new BlockLocationNetworkNode(NETWORK_ID, true, new Vector3i(0, 1, 0));
+        blockNetwork.addNetworkingBlock(leaf);
+
+        assertEquals(2, blockNetwork.getNetworks().size());
+        assertEquals(2, blockNetwork.getNetworks(leaf).size());
+    }
+
+    @Test
+    public void removingNetworkingNodeSplitsOffLeafNodes() {
+        for (int i = -3; i <= 3; i++) {
+            blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, i)));
+        }
+        BlockLocationNetworkNode leftLeaf = new BlockLocationNetworkNode(NETWORK_ID, true, new Vector3i(1, 0, -3));
+        BlockLocationNetworkNode middleLeaf = new BlockLocationNetworkNode(NETWORK_ID, true, new Vector3i(1, 0, 0));
+        blockNetwork.addNetworkingBlock(leftLeaf);
+        blockNetwork.addNetworkingBlock(middleLeaf);
+        assertEquals(1, blockNetwork.getNetworks().size());
+
+        blockNetwork.removeNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, -1)));
+        assertEquals(2, blockNetwork.getNetworks().size());
+        assertEquals(1, blockNetwork.getNetworks(leftLeaf).size());
+        assertFalse(blockNetwork.getNetworks(leftLeaf).containsAll(blockNetwork.getNetworks(middleLeaf)));
+
+        // the middle leaf is left without a connection to anything
+        blockNetwork.removeNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, 0)));
+        assertEquals(3, blockNetwork.getNetworks().size());
+        assertEquals(1, blockNetwork.getNetworkNodes(blockNetwork.getNetworks(middleLeaf).iterator().next()).size());
+    }
+
+    @Test
+    public void nodesWithUnlimitedReachConnectAcrossTheWholeRange() {
+        BlockLocationNetworkNode farNode = new BlockLocationNetworkNode(NETWORK_ID, false, Integer.MAX_VALUE, new Vector3i(1048575, 1048575, 1048575));
+        BlockLocationNetworkNode nearNode = new BlockLocationNetworkNode(NETWORK_ID, false, Integer.MAX_VALUE, new Vector3i(-2, 0, -1048576));
+        blockNetwork.addNetworkingBlock(farNode);
+        blockNetwork.addNetworkingBlock(nearNode);
+        blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(5, 5, 5)));
+
+        assertEquals(2, blockNetwork.getNetworks().size());
+        assertEquals(Sets.newHashSet(farNode), Sets.newHashSet(blockNetwork.getAdjacentNodes(nearNode)));
+    }
+
     @Test
     public void leafNodesConnectToLeafNodes() {
         blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, true, new Vector3i(0, 0, 0)));
@@ -198,6 +342,305 @@ public class BlockNetworkTest {
         assertEquals(1, blockNetwork.getNetworks().size());
     }
 
+    @Test
+    public void longReachNodesConnectAcrossGaps() {
+        blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, 3, new Vector3i(0, 0, 0)));
+        blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, 3, new Vector3i(1, 1, 1)));
+        blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, 3, new Vector3i(40, 0, 0)));
+        assertEquals(2, blockNetwork.getNetworks().size());
+
+        // a short reach node only connects if both sides agree
+        blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(38, 0, 0)));
+        assertEquals(3, blockNetwork.getNetworks().size());
+
+        blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, 3, new Vector3i(39, 0, 0)));
+        assertEquals(2, blockNetwork.getNetworks().size());
+    }
+
+    @Test
+    public void longReachConnectionsShortenPaths() {
+        BlockLocationNetworkNode start = new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(0, 0, 0));
+        BlockLocationNetworkNode end = new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(10, 0, 0));
+        blockNetwork.addNetworkingBlock(start);
+        blockNetwork.addNetworkingBlock(end);
+        for (int x = 1; x < 10; x++) {
+            blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, new Vector3i(x, 0, 0)));
+        }
+        assertEquals(10, blockNetwork.getDistance(start, end));
+
+        // a detour of long reach nodes beats the straight line of short ones
+        for (int x = 0; x <= 10; x += 2) {
+            blockNetwork.addNetworkingBlock(new BlockLocationNetworkNode(NETWORK_ID, false, 3, new Vector3i(x, 1, 0)));
+        }
+        assertEquals(7, blockNetwork.getDistance(start, end));
+        assertTrue(blockNetwork.isInDistance(7, start, end));
+        assertFalse(blockNetwork.isInDistance(6, start, end));
+    }
+
+    @Test
+    public void smallerNetworkIsMergedIntoLargerNetwork() {
+        for (int i = 0; i < 10; i++) {
+            blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, i), allDirections));
+        }
+        Network largeNetwork = blockNetwork.getNetworks().iterator().next();
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, 11), allDirections));
+        listener.reset();
+
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, 10), allDirections));
+        assertEquals(1, blockNetwork.getNetworks().size());
+        assertTrue(blockNetwork.getNetworks().contains(largeNetwork));
+        assertEquals(1, listener.networksMerged);
+        assertEquals(1, listener.networkingNodesMoved);
+    }
+
+    @Test
+    public void addingManyNodesAtOnceAvoidsIntermediateNetworks() {
+        List<NetworkNode> nodes = Lists.newArrayList();
+        for (int x = 0; x < 4; x++) {
+            for (int z = 0; z < 4; z++) {
+                // columns in the order 0, 2, 1, 3, so that adding them one by one would need merges
+                nodes.add(toNode(new Vector3i(x * 2 % 4 + x / 2, 0, z), allDirections));
+            }
+        }
+        blockNetwork.addNetworkingBlocks(nodes);
+
+        assertEquals(1, blockNetwork.getNetworks().size());
+        assertEquals(1, listener.networksAdded);
+        assertEquals(0, listener.networksRemoved);
+        assertEquals(16, listener.networkingNodesAdded);
+        assertEquals(0, listener.networkingNodesRemoved);
+        assertEquals(1, listener.topologyChanges);
+    }
+
+    @Test
+    public void queuedChangesAreAppliedTogether() {
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, 0), allDirections));
+        listener.reset();
+
+        blockNetwork.queueAddNetworkingBlock(toNode(new Vector3i(0, 0, 1), allDirections));
+        blockNetwork.queueAddNetworkingBlock(toNode(new Vector3i(0, 0, 2), allDirections));
+        blockNetwork.queueRemoveNetworkingBlock(toNode(new Vector3i(0, 0, 2), allDirections));
+        blockNetwork.queueRemoveNetworkingBlock(toNode(new Vector3i(0, 0, 0), allDirections));
+        assertTrue(blockNetwork.hasQueuedChanges());
+        assertEquals(0, listener.topologyChanges);
+
+        blockNetwork.applyQueuedChanges();
+        assertFalse(blockNetwork.hasQueuedChanges());
+        assertEquals(1, blockNetwork.getNetworkSize());
+        assertEquals(1, blockNetwork.getNetworks().size());
+        assertEquals(1, listener.topologyChanges);
+    }
+
+    @Test
+    public void snapshotRestoresSavedNetworks() {
+        List<NetworkNode> nodes = Lists.newArrayList(
+                toNode(new Vector3i(0, 0, 0), allDirections),
+                toNode(new Vector3i(0, 0, 1), allDirections),
+                new SidedBlockLocationNetworkNode(NETWORK_ID, true, new Vector3i(0, 0, 2), allDirections),
+                toNode(new Vector3i(5, 0, 0), allDirections),
+                toNode(new Vector3i(5, 0, 1), allDirections));
+        blockNetwork.addNetworkingBlocks(nodes);
+        byte[] data = BlockNetworkSnapshot.write(blockNetwork);
+
+        BlockNetwork restoredNetwork = new BlockNetwork();
+        restoredNetwork.addTopologyListener(new ValidatingListener());
+        assertEquals(Sets.newHashSet(nodes), Sets.newHashSet(restoredNetwork.restoreSnapshot(BlockNetworkSnapshot.read(NETWORK_ID, data))));
+
+        assertEquals(2, restoredNetwork.getNetworks().size());
+        Network firstNetwork = restoredNetwork.getNetworks(nodes.get(0)).iterator().next();
+        assertEquals(Sets.newHashSet(nodes.subList(0, 3)), Sets.newHashSet(restoredNetwork.getNetworkNodes(firstNetwork)));
+        assertEquals(Sets.newHashSet(nodes.get(1)), Sets.newHashSet(restoredNetwork.getAdjacentNodes(nodes.get(2))));
+        assertEquals(Sets.newHashSet(nodes.get(4)), Sets.newHashSet(restoredNetwork.getAdjacentNodes(nodes.get(3))));
+
+        data[data.length / 2] ^= 1;
+        assertNull(BlockNetworkSnapshot.read(NETWORK_ID, data));
+    }
+
+    @Test
+    public void restoredNetworkKeepsItsShapeWhileItsNodesLoadInTwoBatches() {
+        List<NetworkNode> nodes = Lists.newArrayList();
+        for (int z = 0; z < 20; z++) {
+            nodes.add(toNode(new Vector3i(0, 0, z), allDirections));
+        }
+        blockNetwork.addNetworkingBlocks(nodes);
+        BlockNetworkSnapshot snapshot = BlockNetworkSnapshot.read(NETWORK_ID, BlockNetworkSnapshot.write(blockNetwork));
+
+        BlockNetwork restoredNetwork = new BlockNetwork();
+        restoredNetwork.restoreSnapshot(snapshot);
+        Network network = restoredNetwork.getNetworks().iterator().next();
+        TestListener listener = new TestListener();
+        restoredNetwork.addTopologyListener(listener);
+
+        // the first chunk loads, its nodes are there already and the network stays whole
+        nodes.subList(0, 10).forEach(restoredNetwork::queueAddNetworkingBlock);
+        restoredNetwork.applyQueuedChanges();
+        assertEquals(Collections.singleton(network), Sets.newHashSet(restoredNetwork.getNetworks()));
+        assertEquals(20, restoredNetwork.getNetworkNodes(network).size());
+
+        // the second chunk loads with one of the blocks changed since the snapshot was written
+        NetworkNode changedNode = toNode(new Vector3i(0, 0, 15), (byte) 0);
+        restoredNetwork.queueRemoveNetworkingBlock(nodes.get(15));
+        nodes.set(15, changedNode);
+        nodes.subList(10, 20).forEach(restoredNetwork::queueAddNetworkingBlock);
+        restoredNetwork.applyQueuedChanges();
+        assertEquals(1, listener.topologyChanges);
+        assertEquals(Collections.singleton(changedNode),
+                Sets.newHashSet(restoredNetwork.getNetworkNodes(restoredNetwork.getNetworks(changedNode).iterator().next())));
+        assertEquals(15, restoredNetwork.getNetworkNodes(restoredNetwork.getNetworks(nodes.get(0)).iterator().next()).size());
+        assertEquals(4, restoredNetwork.getNetworkNodes(restoredNetwork.getNetworks(nodes.get(19)).iterator().next()).size());
+    }
+
+    @Test
+    public void networkVersionsOnlyChangeWithTheirNetwork() {
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, 0), allDirections));
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(5, 0, 0), allDirections));
+        Network firstNetwork = blockNetwork.getNetworks(toNode(new Vector3i(0, 0, 0), allDirections)).iterator().next();
+        Network secondNetwork = blockNetwork.getNetworks(toNode(new Vector3i(5, 0, 0), allDirections)).iterator().next();
+        long firstVersion = blockNetwork.getTopologyVersion(firstNetwork);
+        long secondVersion = blockNetwork.getTopologyVersion(secondNetwork);
+
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, 1), allDirections));
+        assertTrue(blockNetwork.getTopologyVersion(firstNetwork) > firstVersion);
+        assertEquals(secondVersion, blockNetwork.getTopologyVersion(secondNetwork));
+
+        long membershipVersion = blockNetwork.getMembershipVersion(secondNetwork);
+        blockNetwork.membershipChanged(toNode(new Vector3i(5, 0, 0), allDirections));
+        assertTrue(blockNetwork.getMembershipVersion(secondNetwork) > membershipVersion);
+        assertEquals(secondVersion, blockNetwork.getTopologyVersion(secondNetwork));
+    }
+
+    @Test
+    public void statisticsCountOperations() {
+        blockNetwork.addNetworkingBlocks(Lists.newArrayList(
+                toNode(new Vector3i(0, 0, 1), allDirections),
+                toNode(new Vector3i(0, 0, 0), allDirections),
+                toNode(new Vector3i(0, 0, -1), allDirections)));
+        blockNetwork.removeNetworkingBlock(toNode(new Vector3i(0, 0, 0), allDirections));
+        blockNetwork.getPath(toNode(new Vector3i(0, 0, 1), allDirections), toNode(new Vector3i(0, 0, -1), allDirections));
+
+        BlockNetworkStatistics statistics = blockNetwork.getStatistics();
+        assertEquals(1, statistics.getCount(BlockNetworkStatistics.Operation.ADD));
+        assertEquals(3, statistics.getItems(BlockNetworkStatistics.Operation.ADD));
+        assertEquals(1, statistics.getCount(BlockNetworkStatistics.Operation.REMOVE));
+        assertEquals(1, statistics.getCount(BlockNetworkStatistics.Operation.SPLIT));
+        assertEquals(1, statistics.getItems(BlockNetworkStatistics.Operation.SPLIT));
+        assertEquals(1, statistics.getCount(BlockNetworkStatistics.Operation.PATH));
+        assertEquals(2, statistics.getCount(BlockNetworkStatistics.Operation.DISPATCH));
+        assertTrue(statistics.getPercentileNanos(BlockNetworkStatistics.Operation.ADD, 0.5) > 0);
+    }
+
+    @Test
+    public void longReachNodesConnectAcrossCells() {
+        BlockLocationNetworkNode first = new BlockLocationNetworkNode(NETWORK_ID, false, 100, new Vector3i(0, 0, 0));
+        BlockLocationNetworkNode second = new BlockLocationNetworkNode(NETWORK_ID, false, 100, new Vector3i(60, 30, -10));
+        BlockLocationNetworkNode outOfReach = new BlockLocationNetworkNode(NETWORK_ID, false, 100, new Vector3i(-70, 0, 40));
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(1, 0, 0), allDirections));
+        blockNetwork.addNetworkingBlocks(Lists.newArrayList(first, second, outOfReach));
+
+        assertEquals(2, blockNetwork.getNetworks().size());
+        assertEquals(Sets.newHashSet(second, toNode(new Vector3i(1, 0, 0), allDirections)), Sets.newHashSet(blockNetwork.getAdjacentNodes(first)));
+        // the short reach of the sided node keeps it from connecting to nodes further away
+        assertEquals(Sets.newHashSet(first), Sets.newHashSet(blockNetwork.getAdjacentNodes(toNode(new Vector3i(1, 0, 0), allDirections))));
+
+        assertEquals(Sets.newHashSet(first, toNode(new Vector3i(1, 0, 0), allDirections)),
+                Sets.newHashSet(blockNetwork.getNodesInRegion(new BlockRegion(0, 0, 0, 59, 30, 0))));
+        assertEquals(4, blockNetwork.getNodesInRegion(new BlockRegion(-1000, -1000, -1000, 1000, 1000, 1000)).size());
+    }
+
+    @Test
+    public void networkGraphKeepsTheNetworkAsItWas() {
+        NetworkNode first = toNode(new Vector3i(0, 0, 0), allDirections);
+        NetworkNode middle = toNode(new Vector3i(0, 0, 1), allDirections);
+        NetworkNode last = toNode(new Vector3i(0, 0, 2), allDirections);
+        blockNetwork.addNetworkingBlocks(Lists.newArrayList(first, middle, last));
+        Network network = blockNetwork.getNetworks().iterator().next();
+
+        NetworkGraph graph = NetworkGraph.of(blockNetwork, network, node -> null);
+        blockNetwork.removeNetworkingBlock(last);
+
+        assertEquals(3, graph.getNodeCount());
+        int middleIndex = graph.indexOf(middle);
+        assertEquals(2, graph.getNeighbourCount(middleIndex));
+        assertEquals(Sets.newHashSet(first, last), Sets.newHashSet(graph.getNode(graph.getNeighbour(middleIndex, 0)),
+                graph.getNode(graph.getNeighbour(middleIndex, 1))));
+        assertEquals(1, graph.getNeighbourCount(graph.indexOf(last)));
+        assertTrue(graph.getMembershipVersion() < blockNetwork.getMembershipVersion(network));
+    }
+
+    @Test
+    public void runsOfNodesAreCompressedIntoChains() {
+        // a line of ten nodes with a branch off the fourth
+        List<NetworkNode> line = Lists.newArrayList();
+        for (int z = 0; z < 10; z++) {
+            line.add(toNode(new Vector3i(0, 0, z), allDirections));
+        }
+        NetworkNode branch = toNode(new Vector3i(1, 0, 3), allDirections);
+        blockNetwork.addNetworkingBlocks(line);
+        blockNetwork.addNetworkingBlock(branch);
+        Network network = blockNetwork.getNetworks().iterator().next();
+        ToDoubleFunction<NetworkNode> capacities = node -> ((BlockLocationNetworkNode) node).z() == 6 ? 1 : 10;
+
+        CompressedNetwork compressedNetwork = blockNetwork.computeCompressedNetwork(network, capacities);
+        assertEquals(Sets.newHashSet(line.get(0), line.get(3), line.get(9), branch), Sets.newHashSet(compressedNetwork.getVertices()));
+        assertEquals(3, compressedNetwork.getChains().size());
+        NetworkChain longChain = compressedNetwork.getChains().stream().filter(chain -> chain.getOtherEnd(line.get(3)).equals(line.get(9))).findFirst().get();
+        assertEquals(6, longChain.getLength());
+        assertEquals(1.0, longChain.getBottleneck());
+
+        blockNetwork.removeNetworkingBlock(branch);
+        compressedNetwork = blockNetwork.computeCompressedNetwork(network, capacities);
+        assertEquals(Sets.newHashSet(line.get(0), line.get(9)), Sets.newHashSet(compressedNetwork.getVertices()));
+        assertEquals(1, compressedNetwork.getChains().size());
+        assertEquals(9, compressedNetwork.getChains().iterator().next().getLength());
+    }
+
+    @Test
+    public void changingOneNetworkKeepsTheChainsOfTheOthers() {
+        NetworkNode first = toNode(new Vector3i(0, 0, 0), allDirections);
+        NetworkNode second = toNode(new Vector3i(10, 0, 0), allDirections);
+        blockNetwork.addNetworkingBlocks(Lists.newArrayList(first, toNode(new Vector3i(0, 0, 1), allDirections)));
+        blockNetwork.addNetworkingBlocks(Lists.newArrayList(second, toNode(new Vector3i(10, 0, 1), allDirections)));
+        Network firstNetwork = blockNetwork.getNetworks(first).iterator().next();
+        Network secondNetwork = blockNetwork.getNetworks(second).iterator().next();
+        ToDoubleFunction<NetworkNode> capacities = node -> 1;
+
+        CompressedNetwork firstCompressed = blockNetwork.computeCompressedNetwork(firstNetwork, capacities);
+        CompressedNetwork secondCompressed = blockNetwork.computeCompressedNetwork(secondNetwork, capacities);
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(10, 0, 2), allDirections));
+        blockNetwork.membershipChanged(second);
+
+        assertSame(firstCompressed, blockNetwork.computeCompressedNetwork(firstNetwork, capacities));
+        CompressedNetwork changedCompressed = blockNetwork.computeCompressedNetwork(secondNetwork, capacities);
+        assertNotSame(secondCompressed, changedCompressed);
+        assertEquals(1, changedCompressed.getChains().size());
+        assertEquals(2, changedCompressed.getChains().iterator().next().getLength());
+    }
+
+    @Test
+    public void deferredListenersHearAboutSeveralUpdatesAtOnce() {
+        TestListener deferredListener = new TestListener();
+        blockNetwork.addDeferredTopologyListener(deferredListener);
+        blockNetwork.addDeferredTopologyListener(new ValidatingListener());
+
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, 0), allDirections));
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(0, 0, 1), allDirections));
+        blockNetwork.removeNetworkingBlock(toNode(new Vector3i(0, 0, 1), allDirections));
+        blockNetwork.addNetworkingBlock(toNode(new Vector3i(5, 0, 0), allDirections));
+        blockNetwork.removeNetworkingBlock(toNode(new Vector3i(5, 0, 0), allDirections));
+        assertEquals(5, listener.topologyChanges);
+        assertEquals(0, deferredListener.topologyChanges);
+
+        blockNetwork.dispatchDeferredChanges();
+        assertEquals(1, deferredListener.topologyChanges);
+        assertEquals(1, deferredListener.networksAdded);
+        assertEquals(1, deferredListener.networkingNodesAdded);
+        assertEquals(0, deferredListener.networksRemoved);
+        assertEquals(0, deferredListener.networkingNodesRemoved);
+
+        blockNetwork.dispatchDeferredChanges();
+        assertEquals(1, deferredListener.topologyChanges);
+    }
+
     private class TestListener implements NetworkTopologyListener {
         public int networksAdded;
         public int networksRemoved;
@@ -205,6 +648,9 @@ public class BlockNetworkTest {
         public int networkingNodesRemoved;
         public int leafNodesAdded;
         public int leafNodesRemoved;
+        public int topologyChanges;
+        public int networksMerged;
+        public int networkingNodesMoved;
 
         public void reset() {
             networksAdded = 0;
@@ -213,6 +659,22 @@ public class BlockNetworkTest {
             networkingNodesRemoved = 0;
             leafNodesAdded = 0;
             leafNodesRemoved = 0;
+            topologyChanges = 0;
+            networksMerged = 0;
+            networkingNodesMoved = 0;
+        }
+
+        @Override
+        public void networksMerged(Network source, Network target, Collection<NetworkNode> movedNodes) {
+            networksMerged++;
+            networkingNodesMoved += movedNodes.size();
+            NetworkTopologyListener.super.networksMerged(source, target, movedNodes);
+        }
+
+        @Override
+        public void topologyChanged(NetworkTopologyDelta delta) {
+            topologyChanges++;
+            NetworkTopologyListener.super.topologyChanged(delta);
         }
 
         @Override
@@ -176,10 +176,10 @@ public class SimpleNetworkTest {
         network.addNetworkingBlock(secondLeaf);
         network.addNetworkingBlock(firstLeaf);
 
-        assertTrue(network.isInDistance(2, firstLeaf, secondLeaf, SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.FRONT, secondLeaf.location)));
-        assertFalse(network.isInDistance(2, firstLeaf, secondLeaf, SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.TOP, secondLeaf.location)));
-        assertFalse(network.isInDistance(3, firstLeaf, secondLeaf, SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.TOP, secondLeaf.location)));
-        assertTrue(network.isInDistance(4, firstLeaf, secondLeaf, SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.TOP, secondLeaf.location)));
+        assertTrue(network.isInDistance(2, firstLeaf, secondLeaf, SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.FRONT, secondLeaf.location())));
+        assertFalse(network.isInDistance(2, firstLeaf, secondLeaf, SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.TOP, secondLeaf.location())));
+        assertFalse(network.isInDistance(3, firstLeaf, secondLeaf, SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.TOP, secondLeaf.location())));
+        assertTrue(network.isInDistance(4, firstLeaf, secondLeaf, SidedBlockLocationNetworkNode.createSideConnectivityFilter(Side.TOP, secondLeaf.location())));
     }
 
     @Test